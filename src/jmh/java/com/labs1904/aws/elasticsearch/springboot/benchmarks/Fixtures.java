@@ -0,0 +1,117 @@
+package com.labs1904.aws.elasticsearch.springboot.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.labs1904.aws.elasticsearch.springboot.models.Movie;
+import com.labs1904.aws.elasticsearch.springboot.models.MovieQuery;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Reads the example movies the benchmarks run on. The movies are read from the 'fixtures.dir' system property, which
+ * defaults to the exampleData directory of the project, as the files are not on the classpath.
+ */
+final class Fixtures {
+
+    static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    /**
+     * The keyword fields of mappings/movies.json, as the IndexManager reports them for an index that matches it
+     */
+    static final Set<String> KEYWORD_FIELDS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "title.keyword", "genre", "genre.raw", "mpaaRating", "mpaaRating.raw", "imdbUrl", "language", "language.raw",
+            "country", "country.raw")));
+
+    private static final Path DIRECTORY = Paths.get(System.getProperty("fixtures.dir",
+            "src/main/java/com/labs1904/aws/elasticsearch/springboot/config/exampleData"));
+
+    private Fixtures() {
+        throw new IllegalStateException("Utility Class");
+    }
+
+    /**
+     * @param name The name of the example, for example Avengers
+     * @return The example movie as it is stored in the index
+     */
+    static byte[] movieJson(final String name) {
+        try {
+            return Files.readAllBytes(DIRECTORY.resolve(name + ".json"));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the example movie " + name + " from " + DIRECTORY, e);
+        }
+    }
+
+    static Movie movie(final String name) {
+        try {
+            return OBJECT_MAPPER.readValue(movieJson(name), Movie.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to parse the example movie " + name, e);
+        }
+    }
+
+    /**
+     * @param movie The movie
+     * @return A query with every field of the movie that takes part in a search
+     */
+    static MovieQuery query(final Movie movie) {
+        final MovieQuery movieQuery = new MovieQuery();
+        movieQuery.setTitle(movie.getTitle());
+        movieQuery.setYear(movie.getYear());
+        movieQuery.setGenre(movie.getGenre());
+        movieQuery.setMpaaRating(movie.getMpaaRating());
+        movieQuery.setLanguage(movie.getLanguage());
+        movieQuery.setCountry(movie.getCountry());
+        movieQuery.setStoryline(movie.getStoryline());
+        movieQuery.setSynopsis(movie.getSynopsis());
+        return movieQuery;
+    }
+
+    /**
+     * @param names The examples to return as hits
+     * @return A search response as ElasticSearch returns it, after the response filter
+     */
+    static byte[] searchResponse(final String... names) {
+        final ByteArrayOutputStream response = new ByteArrayOutputStream();
+        write(response, "{\"took\":3,\"hits\":{\"hits\":[");
+        for (int i = 0; i < names.length; i++) {
+            write(response, i > 0 ? ",{\"_source\":" : "{\"_source\":");
+            write(response, movieJson(names[i]));
+            write(response, ",\"sort\":[1.0," + movie(names[i]).getId() + "]}");
+        }
+        write(response, "]}}");
+        return response.toByteArray();
+    }
+
+    private static void write(final ByteArrayOutputStream outputStream, final String text) {
+        write(outputStream, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void write(final ByteArrayOutputStream outputStream, final byte[] bytes) {
+        outputStream.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Discards everything written to it, so a benchmark only measures the writer
+     */
+    static final class NullOutputStream extends OutputStream {
+        @Override
+        public void write(final int b) {
+            // Discarded
+        }
+
+        @Override
+        public void write(final byte[] bytes, final int offset, final int length) {
+            // Discarded
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.labs1904.aws.elasticsearch.springboot.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.labs1904.aws.elasticsearch.springboot.models.Movie;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converting a Movie to and from JSON with Jackson. The 'newMapper' benchmark writes a Movie the way createNewMovie
+ * does, with an ObjectMapper created for the call, to show the cost of that against the shared mapper.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MovieJsonBenchmark {
+
+    @Param({"Avengers", "Black_Panther", "Donnie_Darko", "Pulp_Fiction"})
+    private String movie;
+
+    private byte[] json;
+    private Movie value;
+
+    @Setup
+    public void setUp() {
+        json = Fixtures.movieJson(movie);
+        value = Fixtures.movie(movie);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return Fixtures.OBJECT_MAPPER.writeValueAsBytes(value);
+    }
+
+    @Benchmark
+    public String serializeWithNewMapper() throws IOException {
+        return new ObjectMapper().writeValueAsString(value);
+    }
+
+    @Benchmark
+    public Movie deserialize() throws IOException {
+        return Fixtures.OBJECT_MAPPER.readValue(json, Movie.class);
+    }
+}
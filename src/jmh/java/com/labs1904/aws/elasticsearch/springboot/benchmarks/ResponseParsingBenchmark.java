@@ -0,0 +1,57 @@
+package com.labs1904.aws.elasticsearch.springboot.benchmarks;
+
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.http.HttpResponse;
+import com.labs1904.aws.elasticsearch.springboot.handlers.AwsResponse;
+import com.labs1904.aws.elasticsearch.springboot.handlers.SearchPageWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading a search response with every example movie as a hit: into an AwsResponse body, as the buffered endpoints
+ * do, and copied to the client as a page, as the streaming search endpoints do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseParsingBenchmark {
+
+    private final DefaultRequest<Void> request = new DefaultRequest<>("es");
+    private final OutputStream client = new Fixtures.NullOutputStream();
+
+    private byte[] searchResponse;
+
+    @Setup
+    public void setUp() {
+        searchResponse = Fixtures.searchResponse("Avengers", "Black_Panther", "Donnie_Darko", "Pulp_Fiction");
+    }
+
+    @Benchmark
+    public String readBody() throws IOException {
+        final HttpResponse httpResponse = new HttpResponse(request, null);
+        httpResponse.setStatusCode(200);
+        httpResponse.setContent(new ByteArrayInputStream(searchResponse));
+        return new AwsResponse(httpResponse).getBody();
+    }
+
+    @Benchmark
+    public long writePage() throws IOException {
+        return SearchPageWriter.write(new ByteArrayInputStream(searchResponse), client, 4);
+    }
+}
@@ -0,0 +1,72 @@
+package com.labs1904.aws.elasticsearch.springboot.benchmarks;
+
+import com.labs1904.aws.elasticsearch.springboot.models.MovieQuery;
+import com.labs1904.aws.elasticsearch.springboot.models.SourceFilter;
+import com.labs1904.aws.elasticsearch.springboot.services.SearchBodyWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the body of the match and fuzzy searches, with the default view, paging and a search_after cursor. The
+ * match search is built both for a keyword-mapped index, with term filters, and for an index whose exact fields are
+ * still text, with match queries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBodyBenchmark {
+
+    @Param({"Avengers", "Black_Panther", "Donnie_Darko", "Pulp_Fiction"})
+    private String movie;
+
+    private MovieQuery movieQuery;
+    private SourceFilter summary;
+    private List<Object> after;
+
+    @Setup
+    public void setUp() {
+        movieQuery = Fixtures.query(Fixtures.movie(movie));
+        summary = new SourceFilter(new HashSet<>(Arrays.asList("id", "title", "year", "genre", "starRating")),
+                Collections.emptySet());
+        after = Arrays.asList(1.5, 42);
+    }
+
+    @Benchmark
+    public byte[] match() {
+        return SearchBodyWriter.match(movieQuery, Fixtures.KEYWORD_FIELDS).source(summary).from(0).size(100).toBytes();
+    }
+
+    @Benchmark
+    public byte[] matchOnTextFields() {
+        return SearchBodyWriter.match(movieQuery, Collections.emptySet()).source(summary).from(0).size(100).toBytes();
+    }
+
+    @Benchmark
+    public byte[] fuzzy() {
+        return SearchBodyWriter.fuzzy(movieQuery).source(summary).from(0).size(100).toBytes();
+    }
+
+    @Benchmark
+    public byte[] matchPage() {
+        return SearchBodyWriter.match(movieQuery, Fixtures.KEYWORD_FIELDS).source(summary).size(100).sortByScoreThenId()
+                .searchAfter(after).toBytes();
+    }
+}
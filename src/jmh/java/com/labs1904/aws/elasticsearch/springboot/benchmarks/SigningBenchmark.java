@@ -0,0 +1,93 @@
+package com.labs1904.aws.elasticsearch.springboot.benchmarks;
+
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.Request;
+import com.amazonaws.http.HttpMethodName;
+import com.labs1904.aws.elasticsearch.springboot.config.ConfigurationInfo;
+import com.labs1904.aws.elasticsearch.springboot.handlers.AwsRequestSigner;
+import com.labs1904.aws.elasticsearch.springboot.models.MovieQuery;
+import com.labs1904.aws.elasticsearch.springboot.services.SearchBodyWriter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signing a request with SigV4, for a search body and for a whole Movie document. A new Request is built for every
+ * call, the way generateSignedRequest does, since signing adds its headers to the Request. The credentials are fixed
+ * values given through system properties, so no AWS account is needed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SigningBenchmark {
+
+    private static final URI ENDPOINT = URI.create("https://search-movies.us-east-1.es.amazonaws.com/movies/_search");
+
+    @Param({"search", "document"})
+    private String body;
+
+    private AwsRequestSigner awsRequestSigner;
+    private byte[] content;
+
+    @Setup
+    public void setUp() {
+        System.setProperty("aws.accessKeyId", "AKIDEXAMPLE");
+        System.setProperty("aws.secretKey", "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY");
+
+        final ConfigurationInfo configurationInfo = new ConfigurationInfo();
+        configurationInfo.setRegion("us-east-1");
+        configurationInfo.setServiceName("es");
+        awsRequestSigner = new AwsRequestSigner(configurationInfo, new SimpleMeterRegistry());
+        awsRequestSigner.start();
+
+        if ("search".equals(body)) {
+            final MovieQuery movieQuery = new MovieQuery();
+            movieQuery.setTitle("Avengers");
+            content = SearchBodyWriter.match(movieQuery, Fixtures.KEYWORD_FIELDS).size(10).toBytes();
+        } else {
+            content = Fixtures.movieJson("Avengers");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        awsRequestSigner.stop();
+    }
+
+    @Benchmark
+    public Request<?> sign() {
+        final Map<String, String> headers = new HashMap<>();
+        headers.put("content-type", "application/json");
+        headers.put("Content-Length", String.valueOf(content.length));
+
+        final Request<?> request = new DefaultRequest<Void>("es");
+        request.setHeaders(headers);
+        request.setContent(new ByteArrayInputStream(content));
+        request.setParameters(Collections.emptyMap());
+        request.setEndpoint(ENDPOINT);
+        request.setHttpMethod(HttpMethodName.POST);
+
+        awsRequestSigner.sign(request);
+        return request;
+    }
+}
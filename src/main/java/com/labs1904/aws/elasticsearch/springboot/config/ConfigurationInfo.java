@@ -3,6 +3,13 @@ package com.labs1904.aws.elasticsearch.springboot.config;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 @Configuration
 @ConfigurationProperties(prefix = "aws")
 public class ConfigurationInfo {
@@ -10,6 +17,22 @@ public class ConfigurationInfo {
     private String endpoint;
     private String serviceName;
     private String accessKeyId;
+    private final Client client = new Client();
+    private final Signing signing = new Signing();
+    private final Bulk bulk = new Bulk();
+    private final WriteBehind writeBehind = new WriteBehind();
+    private final Streaming streaming = new Streaming();
+    private final Search search = new Search();
+    private final Export export = new Export();
+    private final Cache cache = new Cache();
+    private final Coalescing coalescing = new Coalescing();
+    private final Async async = new Async();
+    private final Compression compression = new Compression();
+    private final Retry retry = new Retry();
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker();
+    private final Routing routing = new Routing();
+    private final Index index = new Index();
+    private final Facets facets = new Facets();
 
     public String getRegion() {
         return region;
@@ -42,4 +65,962 @@ public class ConfigurationInfo {
     public void setAccessKeyId(String accessKeyId) {
         this.accessKeyId = accessKeyId;
     }
+
+    public Client getClient() {
+        return client;
+    }
+
+    public Signing getSigning() {
+        return signing;
+    }
+
+    public Bulk getBulk() {
+        return bulk;
+    }
+
+    public WriteBehind getWriteBehind() {
+        return writeBehind;
+    }
+
+    public Streaming getStreaming() {
+        return streaming;
+    }
+
+    public Search getSearch() {
+        return search;
+    }
+
+    public Export getExport() {
+        return export;
+    }
+
+    public Cache getCache() {
+        return cache;
+    }
+
+    public Coalescing getCoalescing() {
+        return coalescing;
+    }
+
+    public Async getAsync() {
+        return async;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    public Retry getRetry() {
+        return retry;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public Routing getRouting() {
+        return routing;
+    }
+
+    public Index getIndex() {
+        return index;
+    }
+
+    public Facets getFacets() {
+        return facets;
+    }
+
+    /**
+     * Tuning for the shared HTTP connection pool used for every call to ElasticSearch
+     */
+    public static class Client {
+        private int maxConnections = 50;
+        private int connectionTimeout = 10_000;
+        private int socketTimeout = 30_000;
+        private int requestTimeout = 0;
+        private long connectionTtl = -1;
+        private long connectionMaxIdleMillis = 60_000;
+        private boolean useReaper = true;
+        private boolean tcpKeepAlive = true;
+
+        public int getMaxConnections() {
+            return maxConnections;
+        }
+
+        public void setMaxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+        }
+
+        public int getConnectionTimeout() {
+            return connectionTimeout;
+        }
+
+        public void setConnectionTimeout(int connectionTimeout) {
+            this.connectionTimeout = connectionTimeout;
+        }
+
+        public int getSocketTimeout() {
+            return socketTimeout;
+        }
+
+        public void setSocketTimeout(int socketTimeout) {
+            this.socketTimeout = socketTimeout;
+        }
+
+        public int getRequestTimeout() {
+            return requestTimeout;
+        }
+
+        public void setRequestTimeout(int requestTimeout) {
+            this.requestTimeout = requestTimeout;
+        }
+
+        public long getConnectionTtl() {
+            return connectionTtl;
+        }
+
+        public void setConnectionTtl(long connectionTtl) {
+            this.connectionTtl = connectionTtl;
+        }
+
+        public long getConnectionMaxIdleMillis() {
+            return connectionMaxIdleMillis;
+        }
+
+        public void setConnectionMaxIdleMillis(long connectionMaxIdleMillis) {
+            this.connectionMaxIdleMillis = connectionMaxIdleMillis;
+        }
+
+        public boolean isUseReaper() {
+            return useReaper;
+        }
+
+        public void setUseReaper(boolean useReaper) {
+            this.useReaper = useReaper;
+        }
+
+        public boolean isTcpKeepAlive() {
+            return tcpKeepAlive;
+        }
+
+        public void setTcpKeepAlive(boolean tcpKeepAlive) {
+            this.tcpKeepAlive = tcpKeepAlive;
+        }
+    }
+
+    /**
+     * Settings for signing requests with SigV4
+     */
+    public static class Signing {
+        private long credentialsRefreshSeconds = 60;
+
+        public long getCredentialsRefreshSeconds() {
+            return credentialsRefreshSeconds;
+        }
+
+        public void setCredentialsRefreshSeconds(long credentialsRefreshSeconds) {
+            this.credentialsRefreshSeconds = credentialsRefreshSeconds;
+        }
+    }
+
+    /**
+     * Limits used to split documents into _bulk requests
+     */
+    public static class Bulk {
+        private int maxBytes = 5 * 1024 * 1024;
+        private int maxDocuments = 1000;
+        private int concurrency = 4;
+
+        public int getMaxBytes() {
+            return maxBytes;
+        }
+
+        public void setMaxBytes(int maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        public int getMaxDocuments() {
+            return maxDocuments;
+        }
+
+        public void setMaxDocuments(int maxDocuments) {
+            this.maxDocuments = maxDocuments;
+        }
+
+        public int getConcurrency() {
+            return concurrency;
+        }
+
+        public void setConcurrency(int concurrency) {
+            this.concurrency = concurrency;
+        }
+    }
+
+    /**
+     * Settings for acknowledging creates and updates before they are written to ElasticSearch
+     */
+    public static class WriteBehind {
+        public enum Backpressure {
+            REJECT,
+            BLOCK
+        }
+
+        private boolean enabled = false;
+        private int capacity = 10_000;
+        private int batchSize = 500;
+        private long flushIntervalMillis = 1_000;
+        private Backpressure backpressure = Backpressure.REJECT;
+        private long blockTimeoutMillis = 5_000;
+        private int statusRetention = 100_000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public void setCapacity(int capacity) {
+            this.capacity = capacity;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public long getFlushIntervalMillis() {
+            return flushIntervalMillis;
+        }
+
+        public void setFlushIntervalMillis(long flushIntervalMillis) {
+            this.flushIntervalMillis = flushIntervalMillis;
+        }
+
+        public Backpressure getBackpressure() {
+            return backpressure;
+        }
+
+        public void setBackpressure(Backpressure backpressure) {
+            this.backpressure = backpressure;
+        }
+
+        public long getBlockTimeoutMillis() {
+            return blockTimeoutMillis;
+        }
+
+        public void setBlockTimeoutMillis(long blockTimeoutMillis) {
+            this.blockTimeoutMillis = blockTimeoutMillis;
+        }
+
+        public int getStatusRetention() {
+            return statusRetention;
+        }
+
+        public void setStatusRetention(int statusRetention) {
+            this.statusRetention = statusRetention;
+        }
+    }
+
+    /**
+     * Settings for the threads that stream ElasticSearch responses to the client
+     */
+    public static class Streaming {
+        private int threads = 50;
+        private long timeoutMillis = 60_000;
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public void setThreads(int threads) {
+            this.threads = threads;
+        }
+
+        public long getTimeoutMillis() {
+            return timeoutMillis;
+        }
+
+        public void setTimeoutMillis(long timeoutMillis) {
+            this.timeoutMillis = timeoutMillis;
+        }
+    }
+
+    /**
+     * Settings for paging through search results
+     */
+    public static class Search {
+        private int defaultPageSize = 100;
+        private int maxPageSize = 1000;
+        private boolean pointInTime = false;
+        private String pointInTimeKeepAlive = "1m";
+        private int maxMultiSearchQueries = 50;
+        private String defaultView = "summary";
+        private final Map<String, View> views = new HashMap<>();
+
+        public int getDefaultPageSize() {
+            return defaultPageSize;
+        }
+
+        public void setDefaultPageSize(int defaultPageSize) {
+            this.defaultPageSize = defaultPageSize;
+        }
+
+        public int getMaxPageSize() {
+            return maxPageSize;
+        }
+
+        public void setMaxPageSize(int maxPageSize) {
+            this.maxPageSize = maxPageSize;
+        }
+
+        public boolean isPointInTime() {
+            return pointInTime;
+        }
+
+        public void setPointInTime(boolean pointInTime) {
+            this.pointInTime = pointInTime;
+        }
+
+        public String getPointInTimeKeepAlive() {
+            return pointInTimeKeepAlive;
+        }
+
+        public void setPointInTimeKeepAlive(String pointInTimeKeepAlive) {
+            this.pointInTimeKeepAlive = pointInTimeKeepAlive;
+        }
+
+        public int getMaxMultiSearchQueries() {
+            return maxMultiSearchQueries;
+        }
+
+        public void setMaxMultiSearchQueries(int maxMultiSearchQueries) {
+            this.maxMultiSearchQueries = maxMultiSearchQueries;
+        }
+
+        public String getDefaultView() {
+            return defaultView;
+        }
+
+        public void setDefaultView(String defaultView) {
+            this.defaultView = defaultView;
+        }
+
+        public Map<String, View> getViews() {
+            return views;
+        }
+    }
+
+    /**
+     * Settings for exporting a whole index
+     */
+    public static class Export {
+        private int pageSize = 1000;
+        private String scrollKeepAlive = "1m";
+        private int defaultSlices = 4;
+        private int maxSlices = 16;
+        private int threads = 16;
+
+        public int getPageSize() {
+            return pageSize;
+        }
+
+        public void setPageSize(int pageSize) {
+            this.pageSize = pageSize;
+        }
+
+        public String getScrollKeepAlive() {
+            return scrollKeepAlive;
+        }
+
+        public void setScrollKeepAlive(String scrollKeepAlive) {
+            this.scrollKeepAlive = scrollKeepAlive;
+        }
+
+        public int getDefaultSlices() {
+            return defaultSlices;
+        }
+
+        public void setDefaultSlices(int defaultSlices) {
+            this.defaultSlices = defaultSlices;
+        }
+
+        public int getMaxSlices() {
+            return maxSlices;
+        }
+
+        public void setMaxSlices(int maxSlices) {
+            this.maxSlices = maxSlices;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public void setThreads(int threads) {
+            this.threads = threads;
+        }
+    }
+
+    /**
+     * Settings for the in-process cache of search results
+     */
+    public static class Cache {
+        private boolean enabled = true;
+        private long maxBytes = 64L * 1024 * 1024;
+        private int maxEntryBytes = 1024 * 1024;
+        private long ttlMillis = 30_000;
+        private long refreshGraceMillis = 1000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getMaxBytes() {
+            return maxBytes;
+        }
+
+        public void setMaxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        public int getMaxEntryBytes() {
+            return maxEntryBytes;
+        }
+
+        public void setMaxEntryBytes(int maxEntryBytes) {
+            this.maxEntryBytes = maxEntryBytes;
+        }
+
+        public long getTtlMillis() {
+            return ttlMillis;
+        }
+
+        public void setTtlMillis(long ttlMillis) {
+            this.ttlMillis = ttlMillis;
+        }
+
+        public long getRefreshGraceMillis() {
+            return refreshGraceMillis;
+        }
+
+        public void setRefreshGraceMillis(long refreshGraceMillis) {
+            this.refreshGraceMillis = refreshGraceMillis;
+        }
+    }
+
+    /**
+     * Settings for sharing one ElasticSearch request between identical searches that run at the same time
+     */
+    public static class Coalescing {
+        private boolean enabled = true;
+        private long maxWaitMillis = 5000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getMaxWaitMillis() {
+            return maxWaitMillis;
+        }
+
+        public void setMaxWaitMillis(long maxWaitMillis) {
+            this.maxWaitMillis = maxWaitMillis;
+        }
+    }
+
+    /**
+     * Settings for running the ElasticSearch calls of the endpoints off the servlet threads
+     */
+    public static class Async {
+        private boolean enabled = true;
+        private boolean virtualThreads = false;
+        private int threads = 100;
+        private int queueCapacity = 100;
+        private int maxConcurrent = 50;
+        private long timeoutMillis = 30_000;
+        private final Map<String, Endpoint> endpoints = new HashMap<>();
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public boolean isVirtualThreads() {
+            return virtualThreads;
+        }
+
+        public void setVirtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public void setThreads(int threads) {
+            this.threads = threads;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public int getMaxConcurrent() {
+            return maxConcurrent;
+        }
+
+        public void setMaxConcurrent(int maxConcurrent) {
+            this.maxConcurrent = maxConcurrent;
+        }
+
+        public long getTimeoutMillis() {
+            return timeoutMillis;
+        }
+
+        public void setTimeoutMillis(long timeoutMillis) {
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        public Map<String, Endpoint> getEndpoints() {
+            return endpoints;
+        }
+
+        /**
+         * @param endpoint The name of the endpoint
+         * @return The most calls of the endpoint that may run at once
+         */
+        public int maxConcurrent(final String endpoint) {
+            final Endpoint settings = endpoints.get(endpoint);
+            return settings != null && settings.getMaxConcurrent() != null ? settings.getMaxConcurrent() : maxConcurrent;
+        }
+
+        /**
+         * @param endpoint The name of the endpoint
+         * @return Milliseconds a call of the endpoint may take
+         */
+        public long timeoutMillis(final String endpoint) {
+            final Endpoint settings = endpoints.get(endpoint);
+            return settings != null && settings.getTimeoutMillis() != null ? settings.getTimeoutMillis() : timeoutMillis;
+        }
+    }
+
+    /**
+     * Overrides of the Async limits for one endpoint. Unset values fall back to the Async defaults.
+     */
+    public static class Endpoint {
+        private Integer maxConcurrent;
+        private Long timeoutMillis;
+
+        public Integer getMaxConcurrent() {
+            return maxConcurrent;
+        }
+
+        public void setMaxConcurrent(Integer maxConcurrent) {
+            this.maxConcurrent = maxConcurrent;
+        }
+
+        public Long getTimeoutMillis() {
+            return timeoutMillis;
+        }
+
+        public void setTimeoutMillis(Long timeoutMillis) {
+            this.timeoutMillis = timeoutMillis;
+        }
+    }
+
+    /**
+     * Settings for compressing the bodies sent to and received from ElasticSearch
+     */
+    public static class Compression {
+        private boolean gzipRequests = true;
+        private boolean gzipResponses = true;
+        private int minBytes = 1024;
+        private int level = 6;
+
+        public boolean isGzipRequests() {
+            return gzipRequests;
+        }
+
+        public void setGzipRequests(boolean gzipRequests) {
+            this.gzipRequests = gzipRequests;
+        }
+
+        public boolean isGzipResponses() {
+            return gzipResponses;
+        }
+
+        public void setGzipResponses(boolean gzipResponses) {
+            this.gzipResponses = gzipResponses;
+        }
+
+        public int getMinBytes() {
+            return minBytes;
+        }
+
+        public void setMinBytes(int minBytes) {
+            this.minBytes = minBytes;
+        }
+
+        public int getLevel() {
+            return level;
+        }
+
+        public void setLevel(int level) {
+            this.level = level;
+        }
+    }
+
+    /**
+     * Settings for retrying requests to ElasticSearch that failed because it was throttling or briefly unavailable
+     */
+    public static class Retry {
+        private boolean enabled = true;
+        private int maxAttempts = 3;
+        private long baseDelayMillis = 50;
+        private long maxDelayMillis = 2000;
+        private long maxRetryAfterMillis = 10_000;
+        private double budgetRatio = 0.2;
+        private int budgetBurst = 10;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxAttempts() {
+            return maxAttempts;
+        }
+
+        public void setMaxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+        }
+
+        public long getBaseDelayMillis() {
+            return baseDelayMillis;
+        }
+
+        public void setBaseDelayMillis(long baseDelayMillis) {
+            this.baseDelayMillis = baseDelayMillis;
+        }
+
+        public long getMaxDelayMillis() {
+            return maxDelayMillis;
+        }
+
+        public void setMaxDelayMillis(long maxDelayMillis) {
+            this.maxDelayMillis = maxDelayMillis;
+        }
+
+        public long getMaxRetryAfterMillis() {
+            return maxRetryAfterMillis;
+        }
+
+        public void setMaxRetryAfterMillis(long maxRetryAfterMillis) {
+            this.maxRetryAfterMillis = maxRetryAfterMillis;
+        }
+
+        public double getBudgetRatio() {
+            return budgetRatio;
+        }
+
+        public void setBudgetRatio(double budgetRatio) {
+            this.budgetRatio = budgetRatio;
+        }
+
+        public int getBudgetBurst() {
+            return budgetBurst;
+        }
+
+        public void setBudgetBurst(int budgetBurst) {
+            this.budgetBurst = budgetBurst;
+        }
+    }
+
+    /**
+     * Settings for failing fast while ElasticSearch is unhealthy
+     */
+    public static class CircuitBreaker {
+        private boolean enabled = true;
+        private int windowSize = 20;
+        private int minimumCalls = 10;
+        private double failureRateThreshold = 0.5;
+        private long openMillis = 5000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getWindowSize() {
+            return windowSize;
+        }
+
+        public void setWindowSize(int windowSize) {
+            this.windowSize = windowSize;
+        }
+
+        public int getMinimumCalls() {
+            return minimumCalls;
+        }
+
+        public void setMinimumCalls(int minimumCalls) {
+            this.minimumCalls = minimumCalls;
+        }
+
+        public double getFailureRateThreshold() {
+            return failureRateThreshold;
+        }
+
+        public void setFailureRateThreshold(double failureRateThreshold) {
+            this.failureRateThreshold = failureRateThreshold;
+        }
+
+        public long getOpenMillis() {
+            return openMillis;
+        }
+
+        public void setOpenMillis(long openMillis) {
+            this.openMillis = openMillis;
+        }
+    }
+
+    /**
+     * Settings for spreading searches over the primary domain and its read replicas. Writes always go to the primary.
+     */
+    public static class Routing {
+        public enum Selection {
+            LEAST_OUTSTANDING, LATENCY_WEIGHTED
+        }
+
+        private List<Replica> replicas = new ArrayList<>();
+        private boolean primaryReads = true;
+        private Selection selection = Selection.LEAST_OUTSTANDING;
+        private long healthCheckIntervalMillis = 5000;
+        private boolean hedging = false;
+        private double hedgePercentile = 0.95;
+        private long hedgeMinDelayMillis = 20;
+        private int hedgeThreads = 50;
+
+        public List<Replica> getReplicas() {
+            return replicas;
+        }
+
+        public void setReplicas(List<Replica> replicas) {
+            this.replicas = replicas;
+        }
+
+        public boolean isPrimaryReads() {
+            return primaryReads;
+        }
+
+        public void setPrimaryReads(boolean primaryReads) {
+            this.primaryReads = primaryReads;
+        }
+
+        public Selection getSelection() {
+            return selection;
+        }
+
+        public void setSelection(Selection selection) {
+            this.selection = selection;
+        }
+
+        public long getHealthCheckIntervalMillis() {
+            return healthCheckIntervalMillis;
+        }
+
+        public void setHealthCheckIntervalMillis(long healthCheckIntervalMillis) {
+            this.healthCheckIntervalMillis = healthCheckIntervalMillis;
+        }
+
+        public boolean isHedging() {
+            return hedging;
+        }
+
+        public void setHedging(boolean hedging) {
+            this.hedging = hedging;
+        }
+
+        public double getHedgePercentile() {
+            return hedgePercentile;
+        }
+
+        public void setHedgePercentile(double hedgePercentile) {
+            this.hedgePercentile = hedgePercentile;
+        }
+
+        public long getHedgeMinDelayMillis() {
+            return hedgeMinDelayMillis;
+        }
+
+        public void setHedgeMinDelayMillis(long hedgeMinDelayMillis) {
+            this.hedgeMinDelayMillis = hedgeMinDelayMillis;
+        }
+
+        public int getHedgeThreads() {
+            return hedgeThreads;
+        }
+
+        public void setHedgeThreads(int hedgeThreads) {
+            this.hedgeThreads = hedgeThreads;
+        }
+    }
+
+    /**
+     * A read replica of the primary domain. The region is only needed when it differs from the primary's, as requests
+     * are signed for the region of the domain they are sent to.
+     */
+    public static class Replica {
+        private String url;
+        private String region;
+
+        public String getUrl() {
+            return url;
+        }
+
+        public void setUrl(String url) {
+            this.url = url;
+        }
+
+        public String getRegion() {
+            return region;
+        }
+
+        public void setRegion(String region) {
+            this.region = region;
+        }
+    }
+
+    /**
+     * Settings for keeping the movies index in line with the mapping and settings held by the application
+     */
+    public static class Index {
+        public enum Mode {
+            VERIFY, APPLY, REINDEX, NONE
+        }
+
+        private Mode mode = Mode.VERIFY;
+        private String mapping = "mappings/movies.json";
+
+        public Mode getMode() {
+            return mode;
+        }
+
+        public void setMode(Mode mode) {
+            this.mode = mode;
+        }
+
+        public String getMapping() {
+            return mapping;
+        }
+
+        public void setMapping(String mapping) {
+            this.mapping = mapping;
+        }
+    }
+
+    /**
+     * Settings for facet counts, and for the cache that keeps them for a short time
+     */
+    public static class Facets {
+        private boolean cacheEnabled = true;
+        private long cacheTtlMillis = 60_000;
+        private long cacheMaxEntries = 10_000;
+        private int maxTerms = 20;
+        private List<Double> starRatingRanges = new ArrayList<>(List.of(1.0, 2.0, 3.0, 4.0, 4.5));
+
+        public boolean isCacheEnabled() {
+            return cacheEnabled;
+        }
+
+        public void setCacheEnabled(boolean cacheEnabled) {
+            this.cacheEnabled = cacheEnabled;
+        }
+
+        public long getCacheTtlMillis() {
+            return cacheTtlMillis;
+        }
+
+        public void setCacheTtlMillis(long cacheTtlMillis) {
+            this.cacheTtlMillis = cacheTtlMillis;
+        }
+
+        public long getCacheMaxEntries() {
+            return cacheMaxEntries;
+        }
+
+        public void setCacheMaxEntries(long cacheMaxEntries) {
+            this.cacheMaxEntries = cacheMaxEntries;
+        }
+
+        public int getMaxTerms() {
+            return maxTerms;
+        }
+
+        public void setMaxTerms(int maxTerms) {
+            this.maxTerms = maxTerms;
+        }
+
+        public List<Double> getStarRatingRanges() {
+            return starRatingRanges;
+        }
+
+        public void setStarRatingRanges(List<Double> starRatingRanges) {
+            this.starRatingRanges = starRatingRanges;
+        }
+    }
+
+    /**
+     * A named set of _source fields to return from searches
+     */
+    public static class View {
+        private Set<String> includes = new HashSet<>();
+        private Set<String> excludes = new HashSet<>();
+
+        public Set<String> getIncludes() {
+            return includes;
+        }
+
+        public void setIncludes(Set<String> includes) {
+            this.includes = includes;
+        }
+
+        public Set<String> getExcludes() {
+            return excludes;
+        }
+
+        public void setExcludes(Set<String> excludes) {
+            this.excludes = excludes;
+        }
+    }
 }
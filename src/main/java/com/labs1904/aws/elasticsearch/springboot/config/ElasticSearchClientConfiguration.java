@@ -0,0 +1,141 @@
+package com.labs1904.aws.elasticsearch.springboot.config;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.retry.PredefinedRetryPolicies;
+import com.labs1904.aws.elasticsearch.springboot.handlers.ElasticSearchClientHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+public class ElasticSearchClientConfiguration {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ElasticSearchClientConfiguration.class);
+
+    /**
+     * Build the ClientConfiguration for the shared connection pool from the aws.client.* properties
+     *
+     * @param configurationInfo The ConfigurationInfo
+     * @return ClientConfiguration
+     */
+    @Bean
+    public ClientConfiguration clientConfiguration(final ConfigurationInfo configurationInfo) {
+        final ConfigurationInfo.Client client = configurationInfo.getClient();
+
+        final ClientConfiguration configuration = new ClientConfiguration();
+        configuration.setMaxConnections(client.getMaxConnections());
+        configuration.setConnectionTimeout(client.getConnectionTimeout());
+        configuration.setSocketTimeout(client.getSocketTimeout());
+        configuration.setRequestTimeout(client.getRequestTimeout());
+        configuration.setConnectionTTL(client.getConnectionTtl());
+        configuration.setConnectionMaxIdleMillis(client.getConnectionMaxIdleMillis());
+        configuration.setUseReaper(client.isUseReaper());
+        configuration.setUseTcpKeepAlive(client.isTcpKeepAlive());
+        // Response metadata is only used by the SDK's own service clients, and would otherwise be held per request
+        configuration.setCacheResponseMetadata(false);
+        // Sends Accept-Encoding: gzip, and decompresses gzipped responses before they are read
+        configuration.setUseGzip(configurationInfo.getCompression().isGzipResponses());
+        // Retries are made by ElasticSearchService, which knows which requests are safe to repeat and keeps to a budget
+        configuration.setRetryPolicy(PredefinedRetryPolicies.NO_RETRY_POLICY);
+
+        return configuration;
+    }
+
+    /**
+     * One ElasticSearchClientHandler (and with it one connection pool) for the whole application. The pool and its
+     * idle connection reaper are released when the Spring context closes.
+     *
+     * @param clientConfiguration The ClientConfiguration
+     * @return ElasticSearchClientHandler
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ElasticSearchClientHandler elasticSearchClientHandler(final ClientConfiguration clientConfiguration) {
+        return new ElasticSearchClientHandler(clientConfiguration);
+    }
+
+    /**
+     * Bounded pool used to send the chunks of a bulk request concurrently
+     *
+     * @param configurationInfo The ConfigurationInfo
+     * @return ExecutorService
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService bulkExecutor(final ConfigurationInfo configurationInfo) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(configurationInfo.getBulk().getConcurrency(), runnable -> {
+            final Thread thread = new Thread(runnable, "es-bulk-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Bounded pool that reads the slices of index exports in parallel
+     *
+     * @param configurationInfo The ConfigurationInfo
+     * @return ExecutorService
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService exportExecutor(final ConfigurationInfo configurationInfo) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(configurationInfo.getExport().getThreads(), runnable -> {
+            final Thread thread = new Thread(runnable, "es-export-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Sends the searches that may be hedged, so that the calling thread can send the search to a second endpoint while
+     * the first is still waiting. Has no queue: when every thread is busy, searches are sent without hedging.
+     *
+     * @param configurationInfo The ConfigurationInfo
+     * @return ExecutorService
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService hedgeExecutor(final ConfigurationInfo configurationInfo) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        return new ThreadPoolExecutor(0, configurationInfo.getRouting().getHedgeThreads(), 60L, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), runnable -> {
+            final Thread thread = new Thread(runnable, "es-hedge-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs the ElasticSearch calls of the endpoints, so that a slow cluster ties up these threads instead of the servlet
+     * threads. Uses a virtual thread per call when asked to and the JDK has them, and a bounded pool otherwise.
+     *
+     * @param configurationInfo The ConfigurationInfo
+     * @return ExecutorService
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService asyncExecutor(final ConfigurationInfo configurationInfo) {
+        final ConfigurationInfo.Async async = configurationInfo.getAsync();
+        if (async.isVirtualThreads()) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                LOGGER.warn("Virtual threads are not available on Java {}, using a pool of {} threads.",
+                        System.getProperty("java.version"), async.getThreads());
+            }
+        }
+        final AtomicInteger threadCount = new AtomicInteger();
+        return new ThreadPoolExecutor(async.getThreads(), async.getThreads(), 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(async.getQueueCapacity()), runnable -> {
+            final Thread thread = new Thread(runnable, "es-async-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,21 @@
+package com.labs1904.aws.elasticsearch.springboot.config;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MetricsConfiguration {
+
+    /**
+     * Times the methods annotated with @Timed, tagged with their class and method
+     *
+     * @param meterRegistry The MeterRegistry
+     * @return TimedAspect
+     */
+    @Bean
+    public TimedAspect timedAspect(final MeterRegistry meterRegistry) {
+        return new TimedAspect(meterRegistry);
+    }
+}
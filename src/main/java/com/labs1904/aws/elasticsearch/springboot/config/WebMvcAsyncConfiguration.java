@@ -0,0 +1,37 @@
+package com.labs1904.aws.elasticsearch.springboot.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.inject.Inject;
+
+@Configuration
+public class WebMvcAsyncConfiguration implements WebMvcConfigurer {
+
+    @Inject
+    private ConfigurationInfo configurationInfo;
+
+    /**
+     * Bounded pool that writes streamed ElasticSearch responses to the client. Without it Spring MVC starts a new
+     * thread for every streamed response.
+     *
+     * @return ThreadPoolTaskExecutor
+     */
+    @Bean
+    public ThreadPoolTaskExecutor mvcAsyncExecutor() {
+        final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(configurationInfo.getStreaming().getThreads());
+        executor.setMaxPoolSize(configurationInfo.getStreaming().getThreads());
+        executor.setThreadNamePrefix("es-stream-");
+        return executor;
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(mvcAsyncExecutor());
+        configurer.setDefaultTimeout(configurationInfo.getStreaming().getTimeoutMillis());
+    }
+}
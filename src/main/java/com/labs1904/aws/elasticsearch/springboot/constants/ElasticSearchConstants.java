@@ -9,9 +9,24 @@ public class ElasticSearchConstants {
     public static final String MOVIES_DOCUMENT_TYPE = "movie";
 
     public static final String FILTER_PATH = "filter_path";
-    public static final String FILTER = "hits.hits._source";
+    public static final String FILTER = "took,hits.hits._source";
+    public static final String PAGED_FILTER = "took,hits.hits._source,hits.hits.sort,pit_id";
     public static final String SEARCH_API = "/_search";
+    public static final String PIT_API = "/_pit";
+    public static final String SCROLL_API = "_search/scroll";
+    public static final String SCROLL_FILTER = "_scroll_id,hits.hits._source";
     public static final String STATS_API = "/_stats";
+    public static final String HEALTH_API = "_cluster/health";
+    public static final String UPDATE_API = "/_update";
+    public static final String UPDATE_FILTER = "result";
+    public static final String SCRIPTS_API = "_scripts/";
+    public static final String FACETS_FILTER = "hits.total,aggregations.*.buckets.key,aggregations.*.buckets.doc_count,aggregations.*.buckets.from,aggregations.*.buckets.to";
+    public static final String MULTI_SEARCH_API = "_msearch";
+    public static final String MULTI_SEARCH_FILTER = "took,responses.status,responses.hits.hits._source,responses.error.type,responses.error.reason";
+    public static final String BULK_API = "_bulk";
+    public static final String BULK_FILTER = "took,items.*._id,items.*.status,items.*.error.type,items.*.error.reason";
 
-    public static final String EMPTY_RESPONSE = "{}";
+    public static final String JSON_CONTENT_TYPE = "application/json";
+    public static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+    public static final String GZIP_CONTENT_ENCODING = "gzip";
 }
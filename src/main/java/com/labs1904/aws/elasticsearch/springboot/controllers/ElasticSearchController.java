@@ -1,20 +1,58 @@
 package com.labs1904.aws.elasticsearch.springboot.controllers;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.labs1904.aws.elasticsearch.springboot.config.ConfigurationInfo;
 import com.labs1904.aws.elasticsearch.springboot.constants.ElasticSearchConstants;
+import com.labs1904.aws.elasticsearch.springboot.exceptions.CircuitOpenException;
+import com.labs1904.aws.elasticsearch.springboot.exceptions.ClusterUnavailableException;
+import com.labs1904.aws.elasticsearch.springboot.exceptions.ElasticSearchException;
+import com.labs1904.aws.elasticsearch.springboot.exceptions.EndpointBusyException;
+import com.labs1904.aws.elasticsearch.springboot.exceptions.FacetUnavailableException;
 import com.labs1904.aws.elasticsearch.springboot.exceptions.IdNotFoundException;
+import com.labs1904.aws.elasticsearch.springboot.exceptions.QueueFullException;
+import com.labs1904.aws.elasticsearch.springboot.exceptions.ThrottledException;
+import com.labs1904.aws.elasticsearch.springboot.exceptions.VersionConflictException;
 import com.labs1904.aws.elasticsearch.springboot.handlers.AwsResponse;
+import com.labs1904.aws.elasticsearch.springboot.handlers.CapturingOutputStream;
+import com.labs1904.aws.elasticsearch.springboot.handlers.ElasticSearchMetrics;
+import com.labs1904.aws.elasticsearch.springboot.handlers.SearchPageWriter;
+import com.labs1904.aws.elasticsearch.springboot.models.BulkOperation;
+import com.labs1904.aws.elasticsearch.springboot.models.BulkResult;
+import com.labs1904.aws.elasticsearch.springboot.models.FacetQuery;
+import com.labs1904.aws.elasticsearch.springboot.models.FacetResult;
 import com.labs1904.aws.elasticsearch.springboot.models.Movie;
+import com.labs1904.aws.elasticsearch.springboot.models.MoviePatch;
 import com.labs1904.aws.elasticsearch.springboot.models.MovieQuery;
+import com.labs1904.aws.elasticsearch.springboot.models.MultiSearchQuery;
+import com.labs1904.aws.elasticsearch.springboot.models.MultiSearchResult;
+import com.labs1904.aws.elasticsearch.springboot.models.SearchCursor;
+import com.labs1904.aws.elasticsearch.springboot.models.SourceFilter;
+import com.labs1904.aws.elasticsearch.springboot.models.WriteStatus;
 import com.labs1904.aws.elasticsearch.springboot.services.ElasticSearchService;
+import com.labs1904.aws.elasticsearch.springboot.services.EndpointExecutor;
+import com.labs1904.aws.elasticsearch.springboot.services.IndexExporter;
+import com.labs1904.aws.elasticsearch.springboot.services.RequestCoalescer;
+import com.labs1904.aws.elasticsearch.springboot.services.SearchResultCache;
+import com.labs1904.aws.elasticsearch.springboot.services.WriteBehindQueue;
+import com.labs1904.aws.elasticsearch.springboot.util.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.inject.Inject;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/elastic-search")
@@ -22,33 +60,126 @@ public class ElasticSearchController {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ElasticSearchController.class);
 
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+    private static final String SEARCH_OPERATION = "search";
+    private static final byte[] SEARCH_FAILED = "ElasticSearch failed to run the search".getBytes(StandardCharsets.UTF_8);
+
+    @Inject
+    private ConfigurationInfo configurationInfo;
+
     @Inject
     private ElasticSearchService elasticSearchService;
 
+    @Inject
+    private WriteBehindQueue writeBehindQueue;
+
+    @Inject
+    private IndexExporter indexExporter;
+
+    @Inject
+    private SearchResultCache searchResultCache;
+
+    @Inject
+    private RequestCoalescer requestCoalescer;
+
+    @Inject
+    private EndpointExecutor endpointExecutor;
+
+    @Inject
+    private ElasticSearchMetrics elasticSearchMetrics;
+
     /**
-     * Get a Set of Movies that match your query criteria
+     * Get a page of Movies that match your query criteria
      *
      * @param movieQuery The query
-     * @return Set of Movies
+     * @param size The number of Movies in the page
+     * @param cursor The cursor returned with the previous page, or nothing for the first page
+     * @param view The named set of fields to return, the configured default view when omitted
+     * @param fields Optional list of fields to return, in place of the fields of the view
+     * @param exclude Optional list of fields to leave out, in place of the excluded fields of the view
+     * @return Set of Movies, and the cursor of the next page when there may be more Movies
      */
     @PostMapping(value = "/search", produces = {MediaType.APPLICATION_JSON_VALUE})
     @ResponseBody
-    public ResponseEntity<String> getFromElasticSearch(@RequestBody final MovieQuery movieQuery) {
-        return ResponseEntity.status(HttpStatus.OK).body(
-                elasticSearchService.getMovies(ElasticSearchConstants.MOVIES_INDEX, 0, 100, null, movieQuery));
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> getFromElasticSearch(@RequestBody final MovieQuery movieQuery,
+                                                                                         @RequestParam(value = "size", required = false) final Integer size,
+                                                                                         @RequestParam(value = "cursor", required = false) final String cursor,
+                                                                                         @RequestParam(value = "view", required = false) final String view,
+                                                                                         @RequestParam(value = "fields", required = false) final Set<String> fields,
+                                                                                         @RequestParam(value = "exclude", required = false) final Set<String> exclude) {
+        final int pageSize = pageSize(size);
+        final SearchCursor pageCursor = decodeCursor(cursor);
+        final SourceFilter sourceFilter = sourceFilter(view, fields, exclude);
+        final SearchResultCache.Key key = searchResultCache.pageKey(SearchResultCache.SearchType.MATCH,
+                ElasticSearchConstants.MOVIES_INDEX, pageSize, pageCursor, sourceFilter, movieQuery);
+        return endpointExecutor.submit("search", () -> streamPage(key, pageSize,
+                () -> elasticSearchService.streamMovies(ElasticSearchConstants.MOVIES_INDEX, pageSize, pageCursor, sourceFilter, movieQuery)));
     }
 
     /**
      * Fuzzy search the Movies index with a partial word, or one word in a sentence.
      *
      * @param movieQuery The query
-     * @return Set of Movies
+     * @param size The number of Movies in the page
+     * @param cursor The cursor returned with the previous page, or nothing for the first page
+     * @param view The named set of fields to return, the configured default view when omitted
+     * @param fields Optional list of fields to return, in place of the fields of the view
+     * @param exclude Optional list of fields to leave out, in place of the excluded fields of the view
+     * @return Set of Movies, and the cursor of the next page when there may be more Movies
      */
     @PostMapping(value = "/fuzzySearch", produces = {MediaType.APPLICATION_JSON_VALUE})
     @ResponseBody
-    public ResponseEntity<String> getFromElasticSearchFuzzySearch(@RequestBody final MovieQuery movieQuery) {
-        return ResponseEntity.status(HttpStatus.OK).body(
-                elasticSearchService.getMoviesFuzzySearch(ElasticSearchConstants.MOVIES_INDEX, 0, 100, null, movieQuery));
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> getFromElasticSearchFuzzySearch(@RequestBody final MovieQuery movieQuery,
+                                                                                                    @RequestParam(value = "size", required = false) final Integer size,
+                                                                                                    @RequestParam(value = "cursor", required = false) final String cursor,
+                                                                                                    @RequestParam(value = "view", required = false) final String view,
+                                                                                                    @RequestParam(value = "fields", required = false) final Set<String> fields,
+                                                                                                    @RequestParam(value = "exclude", required = false) final Set<String> exclude) {
+        final int pageSize = pageSize(size);
+        final SearchCursor pageCursor = decodeCursor(cursor);
+        final SourceFilter sourceFilter = sourceFilter(view, fields, exclude);
+        final SearchResultCache.Key key = searchResultCache.pageKey(SearchResultCache.SearchType.FUZZY,
+                ElasticSearchConstants.MOVIES_INDEX, pageSize, pageCursor, sourceFilter, movieQuery);
+        return endpointExecutor.submit("fuzzySearch", () -> streamPage(key, pageSize,
+                () -> elasticSearchService.streamMoviesFuzzySearch(ElasticSearchConstants.MOVIES_INDEX, pageSize, pageCursor, sourceFilter, movieQuery)));
+    }
+
+    /**
+     * Run many searches of the Movies index with a single call to ElasticSearch
+     *
+     * @param queries The searches, each with its own from, size and fields
+     * @return The Movies of each search, in the order given. Responds with 207 when only some of the searches succeeded.
+     */
+    @PostMapping(value = "/multiSearch", produces = {MediaType.APPLICATION_JSON_VALUE})
+    @ResponseBody
+    public CompletableFuture<ResponseEntity<MultiSearchResult>> multiSearchElasticSearch(@RequestBody final List<MultiSearchQuery> queries) {
+        return endpointExecutor.submit("multiSearch", () -> {
+            final MultiSearchResult result = elasticSearchService.multiSearch(ElasticSearchConstants.MOVIES_INDEX, queries);
+            if (result.getFailed() == 0) {
+                return ResponseEntity.status(HttpStatus.OK).body(result);
+            }
+            LOGGER.warn("Failed {} of {} searches in multi search.", result.getFailed(), queries.size());
+            return ResponseEntity.status(result.getSucceeded() > 0 ? HttpStatus.MULTI_STATUS : HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(result);
+        });
+    }
+
+    /**
+     * Count the Movies that match your query criteria by genre, decade, MPAA rating, language, country or star rating
+     *
+     * @param facetQuery The query, and the facets to count
+     * @return The number of matching Movies, and the buckets of each facet
+     */
+    @PostMapping(value = "/facets", produces = {MediaType.APPLICATION_JSON_VALUE})
+    @ResponseBody
+    public CompletableFuture<ResponseEntity<FacetResult>> facetsElasticSearch(@RequestBody final FacetQuery facetQuery) {
+        return endpointExecutor.submit("facets", () -> {
+            final FacetResult result = elasticSearchService.getFacets(ElasticSearchConstants.MOVIES_INDEX, facetQuery);
+            if (result == null) {
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+            }
+            return ResponseEntity.status(HttpStatus.OK).body(result);
+        });
     }
 
     /**
@@ -59,17 +190,58 @@ public class ElasticSearchController {
      */
     @PostMapping(value = "/create", produces = {MediaType.TEXT_PLAIN_VALUE})
     @ResponseBody
-    public ResponseEntity<String> createElasticSearchObject(@RequestBody final Movie movie) {
-        String title = null;
-        try {
-            title = elasticSearchService.createNewMovie(movie);
-            if (title != null) {
-                return ResponseEntity.status(HttpStatus.OK).body("Successfully created " + title);
+    public CompletableFuture<ResponseEntity<String>> createElasticSearchObject(@RequestBody final Movie movie) {
+        if (writeBehindQueue.isEnabled()) {
+            return CompletableFuture.completedFuture(acceptWrite(BulkOperation.index(movie), movie));
+        }
+        return endpointExecutor.submit("create", () -> {
+            String title = null;
+            try {
+                title = elasticSearchService.createNewMovie(movie);
+                if (title != null) {
+                    return ResponseEntity.status(HttpStatus.OK).body("Successfully created " + title);
+                }
+            } catch (JsonProcessingException e) {
+                LOGGER.error("Failed to create Movie.", e);
             }
-        } catch (JsonProcessingException e) {
-            LOGGER.error("Failed to create Movie.", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to create  " + movie.getTitle());
+        });
+    }
+
+    /**
+     * Get the status of a create or update that was accepted by the write-behind queue
+     *
+     * @param id The document ID
+     * @return Response Entity
+     */
+    @GetMapping(value = "/status", produces = {MediaType.APPLICATION_JSON_VALUE})
+    @ResponseBody
+    public ResponseEntity<WriteStatus> writeStatus(@RequestParam("id") final String id) {
+        final WriteStatus status = writeBehindQueue.getStatus(id);
+        if (status == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
-        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to create  " + movie.getTitle());
+        return ResponseEntity.status(HttpStatus.OK).body(status);
+    }
+
+    /**
+     * Create or overwrite many Movies in ElasticSearch with the _bulk API
+     *
+     * @param movies The Movie objects
+     * @return The result of each Movie. Responds with 207 when only some of the Movies were indexed.
+     */
+    @PostMapping(value = "/bulk", produces = {MediaType.APPLICATION_JSON_VALUE})
+    @ResponseBody
+    public CompletableFuture<ResponseEntity<BulkResult>> bulkElasticSearchObjects(@RequestBody final List<Movie> movies) {
+        return endpointExecutor.submit("bulk", () -> {
+            final BulkResult result = elasticSearchService.bulkIndex(movies);
+            if (result.getFailed() == 0) {
+                return ResponseEntity.status(HttpStatus.OK).body(result);
+            }
+            LOGGER.warn("Failed to index {} of {} Movies in bulk.", result.getFailed(), movies.size());
+            return ResponseEntity.status(result.getSucceeded() > 0 ? HttpStatus.MULTI_STATUS : HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(result);
+        });
     }
 
     /**
@@ -80,20 +252,54 @@ public class ElasticSearchController {
      */
     @PutMapping(value = "/update", produces = {MediaType.TEXT_PLAIN_VALUE})
     @ResponseBody
-    public ResponseEntity<String> updateElasticSearchObject(@RequestBody final Movie movie,
-                                                            @RequestParam(value = "id", required = true) final Long id) {
-        String title = null;
-        try {
-            title = elasticSearchService.updateMovie(id, movie);
-            if (title != null) {
-                return ResponseEntity.status(HttpStatus.OK).body("Successfully updated " + title);
-            }
-        } catch (JsonProcessingException e) {
-            LOGGER.error("Failed to update Movie.", e);
-        } catch (IdNotFoundException inf) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(inf.getMessage());
+    public CompletableFuture<ResponseEntity<String>> updateElasticSearchObject(@RequestBody final Movie movie,
+                                                                               @RequestParam(value = "id", required = true) final Long id) {
+        if (writeBehindQueue.isEnabled()) {
+            return CompletableFuture.completedFuture(acceptWrite(BulkOperation.update(id, movie), movie));
         }
-        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to update  " + movie.getTitle());
+        return endpointExecutor.submit("update", () -> {
+            String title = null;
+            try {
+                title = elasticSearchService.updateMovie(id, movie);
+                if (title != null) {
+                    return ResponseEntity.status(HttpStatus.OK).body("Successfully updated " + title);
+                }
+            } catch (JsonProcessingException e) {
+                LOGGER.error("Failed to update Movie.", e);
+            } catch (IdNotFoundException inf) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(inf.getMessage());
+            } catch (VersionConflictException vc) {
+                return ResponseEntity.status(HttpStatus.CONFLICT).body(vc.getMessage());
+            }
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to update  " + movie.getTitle());
+        });
+    }
+
+    /**
+     * Change some fields of a Movie in ElasticSearch, without sending the whole Movie
+     *
+     * @param patch The fields to set, and the values to add to or remove from set-valued fields
+     * @param id The ID of the Movie
+     * @return Response Entity
+     */
+    @PatchMapping(value = "/update", produces = {MediaType.TEXT_PLAIN_VALUE})
+    @ResponseBody
+    public CompletableFuture<ResponseEntity<String>> patchElasticSearchObject(@RequestBody final MoviePatch patch,
+                                                                              @RequestParam(value = "id", required = true) final Long id) {
+        return endpointExecutor.submit("patch", () -> {
+            try {
+                if (elasticSearchService.patchMovie(id, patch)) {
+                    return ResponseEntity.status(HttpStatus.OK).body("Successfully patched movie with ID of " + id);
+                }
+            } catch (JsonProcessingException e) {
+                LOGGER.error("Failed to patch Movie.", e);
+            } catch (IdNotFoundException inf) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(inf.getMessage());
+            } catch (VersionConflictException vc) {
+                return ResponseEntity.status(HttpStatus.CONFLICT).body(vc.getMessage());
+            }
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to patch movie with ID of " + id);
+        });
     }
 
     /**
@@ -106,15 +312,44 @@ public class ElasticSearchController {
      */
     @DeleteMapping(value = "/delete", produces = {MediaType.TEXT_PLAIN_VALUE})
     @ResponseBody
-    public ResponseEntity<String> deleteFromElasticSearch(@RequestParam("index") final String index,
-                                                          @RequestParam("type") final String type,
-                                                          @RequestParam("id") final String id) {
-        AwsResponse response = elasticSearchService.deleteDocument(index, type, id);
-        if (response != null && response.getHttpResponse().getStatusCode() == 200) {
-            return ResponseEntity.status(HttpStatus.OK).body("Successfully deleted movie with ID of " + id);
-        } else {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error deleting ElasticSearch document");
+    public CompletableFuture<ResponseEntity<String>> deleteFromElasticSearch(@RequestParam("index") final String index,
+                                                                             @RequestParam("type") final String type,
+                                                                             @RequestParam("id") final String id) {
+        return endpointExecutor.submit("delete", () -> {
+            AwsResponse response = elasticSearchService.deleteDocument(index, type, id);
+            if (response != null && response.getHttpResponse().getStatusCode() == 200) {
+                return ResponseEntity.status(HttpStatus.OK).body("Successfully deleted movie with ID of " + id);
+            } else {
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error deleting ElasticSearch document");
+            }
+        });
+    }
+
+    /**
+     * Export every document of an ElasticSearch Index as NDJSON, one document per line
+     *
+     * @param index The targeted index
+     * @param fields Optional list of fields to export, all fields when omitted
+     * @param slices The number of slices of the index to read in parallel
+     * @param gzip Compress the export with gzip
+     * @return Response Entity
+     */
+    @GetMapping(value = "/export", produces = {ElasticSearchConstants.NDJSON_CONTENT_TYPE})
+    @ResponseBody
+    public ResponseEntity<StreamingResponseBody> exportIndex(@RequestParam("index") final String index,
+                                                             @RequestParam(value = "fields", required = false) final Set<String> fields,
+                                                             @RequestParam(value = "slices", required = false) final Integer slices,
+                                                             @RequestParam(value = "gzip", defaultValue = "false") final boolean gzip) {
+        final int sliceCount = slices != null ? slices : configurationInfo.getExport().getDefaultSlices();
+        final ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.OK);
+        if (!gzip) {
+            return response.body(outputStream -> indexExporter.export(index, fields, sliceCount, outputStream));
         }
+        return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(outputStream -> {
+            final GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream, GZIP_BUFFER_SIZE);
+            indexExporter.export(index, fields, sliceCount, gzipOutputStream);
+            gzipOutputStream.finish();
+        });
     }
 
     /**
@@ -125,12 +360,170 @@ public class ElasticSearchController {
      */
     @GetMapping(value = "/statistics", produces = {MediaType.APPLICATION_JSON_VALUE})
     @ResponseBody
-    public ResponseEntity<String> indexStatistics(@RequestParam("index") final String index) {
-        String response = elasticSearchService.getIndexStatistics(index);
-        if (response != null) {
-            return ResponseEntity.status(HttpStatus.OK).body(response);
-        } else {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error fetching statistics for index");
+    public CompletableFuture<ResponseEntity<String>> indexStatistics(@RequestParam("index") final String index) {
+        return endpointExecutor.submit("statistics", () -> {
+            String response = elasticSearchService.getIndexStatistics(index);
+            if (response != null) {
+                return ResponseEntity.status(HttpStatus.OK).body(response);
+            } else {
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error fetching statistics for index");
+            }
+        });
+    }
+
+    /**
+     * Accept a write into the write-behind queue, to be written to ElasticSearch in the background
+     *
+     * @param operation The write
+     * @param movie The Movie object
+     * @return Response Entity
+     */
+    private ResponseEntity<String> acceptWrite(final BulkOperation operation, final Movie movie) {
+        try {
+            writeBehindQueue.submit(operation);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body("Accepted " + movie.getTitle());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        } catch (QueueFullException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Interrupted while queueing " + movie.getTitle());
+        }
+    }
+
+    /**
+     * Answer with the cached page when there is one, or with the page of an identical search that is already in
+     * flight. Otherwise pipe the page of ElasticSearch results straight to the client, without reading it into memory
+     * first, and keep a copy on the way through when it is small enough, to cache and to share.
+     *
+     * @param key The normalized search, or null when the page must not be cached or shared
+     * @param size The page size
+     * @param search Sends the search, and returns the streaming response
+     * @return Response Entity
+     */
+    private ResponseEntity<StreamingResponseBody> streamPage(final SearchResultCache.Key key, final int size,
+                                                             final Supplier<AwsResponse> search) {
+        final byte[] cached = searchResultCache.get(key);
+        if (cached != null) {
+            return ResponseEntity.status(HttpStatus.OK).body(outputStream -> outputStream.write(cached));
+        }
+        final RequestCoalescer.Flight flight = requestCoalescer.begin(key);
+        if (!flight.isLeader()) {
+            final byte[] shared = flight.await();
+            if (shared != null) {
+                return ResponseEntity.status(HttpStatus.OK).body(outputStream -> outputStream.write(shared));
+            }
+        }
+
+        final long started = System.nanoTime();
+        final AwsResponse response;
+        try {
+            response = search.get();
+        } catch (RuntimeException e) {
+            flight.complete(null);
+            throw e;
+        }
+        if (response == null) {
+            // ElasticSearch rejected the search, for example a bad query, so there is no page to send
+            flight.complete(null);
+            return ResponseEntity.status(HttpStatus.BAD_GATEWAY)
+                    .body(outputStream -> outputStream.write(SEARCH_FAILED));
+        }
+        if (key == null) {
+            return ResponseEntity.status(HttpStatus.OK).body(outputStream -> elasticSearchMetrics.recordTook(
+                    SEARCH_OPERATION, SearchPageWriter.write(response.getContent(), outputStream, size)));
+        }
+        return ResponseEntity.status(HttpStatus.OK).body(outputStream -> {
+            byte[] page = null;
+            try {
+                final CapturingOutputStream capture = new CapturingOutputStream(outputStream, searchResultCache.getMaxEntryBytes());
+                elasticSearchMetrics.recordTook(SEARCH_OPERATION, SearchPageWriter.write(response.getContent(), capture, size));
+                page = capture.toByteArray();
+                searchResultCache.put(key, page, started);
+            } finally {
+                flight.complete(page);
+            }
+        });
+    }
+
+    /**
+     * @param size The requested page size
+     * @return The page size, capped at the configured maximum
+     */
+    private int pageSize(final Integer size) {
+        final ConfigurationInfo.Search settings = configurationInfo.getSearch();
+        if (size == null) {
+            return settings.getDefaultPageSize();
+        }
+        return Math.max(1, Math.min(size, settings.getMaxPageSize()));
+    }
+
+    /**
+     * @param view The name of the view, or null for the default view
+     * @param fields The fields to return, or null for the fields of the view
+     * @param exclude The fields to leave out, or null for the excluded fields of the view
+     * @return The fields to return from the search
+     */
+    private SourceFilter sourceFilter(final String view, final Set<String> fields, final Set<String> exclude) {
+        final ConfigurationInfo.Search settings = configurationInfo.getSearch();
+        final ConfigurationInfo.View named = settings.getViews().get(view != null ? view : settings.getDefaultView());
+        if (named == null && view != null) {
+            throw new IllegalArgumentException("Unknown view " + view + ", expected one of " + settings.getViews().keySet());
+        }
+        return new SourceFilter(fields != null ? fields : named != null ? named.getIncludes() : null,
+                exclude != null ? exclude : named != null ? named.getExcludes() : null);
+    }
+
+    private SearchCursor decodeCursor(final String cursor) {
+        return StringUtils.checkNullOrEmpty(cursor) ? SearchCursor.decode(cursor) : null;
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> handleIllegalArgument(final IllegalArgumentException e) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+    }
+
+    @ExceptionHandler(FacetUnavailableException.class)
+    public ResponseEntity<String> handleFacetUnavailable(final FacetUnavailableException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+    }
+
+    @ExceptionHandler(EndpointBusyException.class)
+    public ResponseEntity<String> handleEndpointBusy(final EndpointBusyException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+    }
+
+    @ExceptionHandler(TimeoutException.class)
+    public ResponseEntity<String> handleTimeout(final TimeoutException e) {
+        return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body("ElasticSearch did not answer in time");
+    }
+
+    @ExceptionHandler(ThrottledException.class)
+    public ResponseEntity<String> handleThrottled(final ThrottledException e) {
+        return retryLater(HttpStatus.TOO_MANY_REQUESTS, e);
+    }
+
+    @ExceptionHandler(ClusterUnavailableException.class)
+    public ResponseEntity<String> handleClusterUnavailable(final ClusterUnavailableException e) {
+        return retryLater(HttpStatus.BAD_GATEWAY, e);
+    }
+
+    @ExceptionHandler(CircuitOpenException.class)
+    public ResponseEntity<String> handleCircuitOpen(final CircuitOpenException e) {
+        return retryLater(HttpStatus.SERVICE_UNAVAILABLE, e);
+    }
+
+    /**
+     * Pass on how long ElasticSearch asked to wait, or how long the circuit stays open, as a Retry-After header
+     */
+    private ResponseEntity<String> retryLater(final HttpStatus status, final ElasticSearchException e) {
+        final ResponseEntity.BodyBuilder response = ResponseEntity.status(status);
+        if (e.getRetryAfterMillis() >= 0) {
+            // Retry-After is in whole seconds, rounded up so that clients never come back too early
+            response.header(HttpHeaders.RETRY_AFTER,
+                    String.valueOf(TimeUnit.MILLISECONDS.toSeconds(e.getRetryAfterMillis() + 999)));
         }
+        return response.body(e.getMessage());
     }
 }
@@ -0,0 +1,10 @@
+package com.labs1904.aws.elasticsearch.springboot.exceptions;
+
+/**
+ * The request was not sent, as too many recent requests to ElasticSearch failed
+ */
+public class CircuitOpenException extends ElasticSearchException {
+    public CircuitOpenException(String message, long retryAfterMillis) {
+        super(message, retryAfterMillis, null);
+    }
+}
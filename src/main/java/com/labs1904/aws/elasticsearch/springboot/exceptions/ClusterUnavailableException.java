@@ -0,0 +1,10 @@
+package com.labs1904.aws.elasticsearch.springboot.exceptions;
+
+/**
+ * ElasticSearch kept answering with 502, 503 or 504, or could not be connected to
+ */
+public class ClusterUnavailableException extends ElasticSearchException {
+    public ClusterUnavailableException(String message, long retryAfterMillis, Throwable cause) {
+        super(message, retryAfterMillis, cause);
+    }
+}
@@ -0,0 +1,21 @@
+package com.labs1904.aws.elasticsearch.springboot.exceptions;
+
+/**
+ * ElasticSearch could not be reached or would not answer, even after retrying. Unlike the checked exceptions of this
+ * package, these are not about the request itself, and are passed up to the controller from wherever they happen.
+ */
+public class ElasticSearchException extends RuntimeException {
+    private final long retryAfterMillis;
+
+    public ElasticSearchException(String message, long retryAfterMillis, Throwable cause) {
+        super(message, cause);
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * @return How long to wait before trying again, or -1 when unknown
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -0,0 +1,7 @@
+package com.labs1904.aws.elasticsearch.springboot.exceptions;
+
+public class EndpointBusyException extends Exception {
+    public EndpointBusyException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,12 @@
+package com.labs1904.aws.elasticsearch.springboot.exceptions;
+
+/**
+ * A facet was requested that the movies index cannot count yet, as the keyword field it counts is not mapped. Like
+ * {@link ElasticSearchException}, it is passed up to the controller, as the index has to be updated before it can be
+ * counted.
+ */
+public class FacetUnavailableException extends RuntimeException {
+    public FacetUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.labs1904.aws.elasticsearch.springboot.exceptions;
+
+public class QueueFullException extends Exception {
+    public QueueFullException(String message) {
+        super(message);
+    }
+}
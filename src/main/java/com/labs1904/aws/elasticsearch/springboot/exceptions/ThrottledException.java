@@ -0,0 +1,10 @@
+package com.labs1904.aws.elasticsearch.springboot.exceptions;
+
+/**
+ * ElasticSearch kept answering with 429 Too Many Requests
+ */
+public class ThrottledException extends ElasticSearchException {
+    public ThrottledException(String message, long retryAfterMillis, Throwable cause) {
+        super(message, retryAfterMillis, cause);
+    }
+}
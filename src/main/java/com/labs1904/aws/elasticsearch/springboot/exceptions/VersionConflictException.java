@@ -0,0 +1,7 @@
+package com.labs1904.aws.elasticsearch.springboot.exceptions;
+
+public class VersionConflictException extends Exception {
+    public VersionConflictException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,131 @@
+package com.labs1904.aws.elasticsearch.springboot.handlers;
+
+import com.amazonaws.Request;
+import com.amazonaws.SdkClientException;
+import com.amazonaws.auth.AWS4Signer;
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
+import com.labs1904.aws.elasticsearch.springboot.config.ConfigurationInfo;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Signs requests to AWS ElasticSearch with SigV4.
+ *
+ * A single AWS4Signer is shared by every request to a region. The signer keeps the derived per-day/region/service
+ * signing key in its own cache, so the HMAC chain is only computed once per day for each set of credentials. Credentials are resolved
+ * on a background thread and refreshed on a fixed schedule, so request threads only ever read the latest credentials.
+ */
+@Named
+public class AwsRequestSigner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AwsRequestSigner.class);
+
+    private final AWSCredentialsProvider credentialsProvider = new DefaultAWSCredentialsProviderChain();
+    private final AtomicReference<AWSCredentials> credentials = new AtomicReference<>();
+
+    private final ConfigurationInfo configurationInfo;
+    private final Timer signingTimer;
+
+    private final ConcurrentMap<String, AWS4Signer> aws4Signers = new ConcurrentHashMap<>();
+    private ScheduledExecutorService refresher;
+
+    @Inject
+    public AwsRequestSigner(final ConfigurationInfo configurationInfo, final MeterRegistry meterRegistry) {
+        this.configurationInfo = configurationInfo;
+        this.signingTimer = Timer.builder("elasticsearch.signing")
+                .description("Time spent signing requests to ElasticSearch with SigV4")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "aws-credentials-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(this::refreshCredentials, 0,
+                configurationInfo.getSigning().getCredentialsRefreshSeconds(), TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        refresher.shutdownNow();
+    }
+
+    /**
+     * Sign the request to AWS ElasticSearch using the shared AWS4Signer of the configured region
+     *
+     * @param request The Request
+     */
+    public void sign(final Request<?> request) {
+        sign(request, configurationInfo.getRegion());
+    }
+
+    /**
+     * Sign the request to an AWS ElasticSearch domain in another region
+     *
+     * @param request The Request
+     * @param region The region of the domain, or null for the configured region
+     */
+    public void sign(final Request<?> request, final String region) {
+        final AWS4Signer aws4Signer = aws4Signers.computeIfAbsent(region != null ? region : configurationInfo.getRegion(),
+                this::newSigner);
+        final AWSCredentials current = currentCredentials();
+        signingTimer.record(() -> aws4Signer.sign(request, current));
+    }
+
+    private AWS4Signer newSigner(final String region) {
+        final AWS4Signer aws4Signer = new AWS4Signer();
+        aws4Signer.setRegionName(region);
+        aws4Signer.setServiceName(configurationInfo.getServiceName());
+        return aws4Signer;
+    }
+
+    /**
+     * Get the most recently resolved credentials. Only the very first request(s), sent before the background refresh
+     * has completed once, resolve the credentials on the calling thread.
+     *
+     * @return AWSCredentials
+     */
+    private AWSCredentials currentCredentials() {
+        final AWSCredentials current = credentials.get();
+        if (current != null) {
+            return current;
+        }
+        refreshCredentials();
+        final AWSCredentials loaded = credentials.get();
+        if (loaded == null) {
+            throw new SdkClientException("No AWS credentials are available to sign the ElasticSearch request");
+        }
+        return loaded;
+    }
+
+    /**
+     * Resolve the credentials from the DefaultAWSCredentialsProviderChain. Providers backed by instance profiles or STS
+     * renew themselves shortly before they expire when they are read, so reading them here keeps that renewal off the
+     * request threads. When the lookup fails the previous credentials are kept.
+     */
+    private synchronized void refreshCredentials() {
+        try {
+            credentials.set(credentialsProvider.getCredentials());
+        } catch (Exception e) {
+            LOGGER.warn("Unable to refresh AWS credentials, keeping the previous credentials: {}", e.getMessage());
+        }
+    }
+}
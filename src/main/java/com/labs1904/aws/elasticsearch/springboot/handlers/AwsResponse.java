@@ -3,15 +3,44 @@ package com.labs1904.aws.elasticsearch.springboot.handlers;
 import com.amazonaws.http.HttpResponse;
 import com.amazonaws.util.IOUtils;
 
+import java.io.Closeable;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.LongConsumer;
 
-public class AwsResponse {
+public class AwsResponse implements Closeable {
     private final HttpResponse httpResponse;
     private final String body;
+    private final boolean streaming;
+    private final CountingInputStream content;
+    private final long contentLength;
 
     public AwsResponse(HttpResponse httpResponse) throws IOException {
+        this(httpResponse, false);
+    }
+
+    /**
+     * @param httpResponse The HttpResponse
+     * @param streaming When true the body is left unread on the open connection, to be read from getContent() and
+     *                  then closed. Otherwise the whole body is read into getBody().
+     * @throws IOException Throws IOException when the body cannot be read
+     */
+    public AwsResponse(HttpResponse httpResponse, boolean streaming) throws IOException {
         this.httpResponse = httpResponse;
-        this.body = IOUtils.toString(httpResponse.getContent());
+        this.streaming = streaming;
+        if (streaming) {
+            this.body = null;
+            this.content = httpResponse.getContent() != null ? new CountingInputStream(httpResponse.getContent()) : null;
+            this.contentLength = -1;
+        } else {
+            final byte[] bytes = IOUtils.toByteArray(httpResponse.getContent());
+            this.body = new String(bytes, StandardCharsets.UTF_8);
+            this.content = null;
+            this.contentLength = bytes.length;
+        }
     }
 
     public HttpResponse getHttpResponse() {
@@ -19,6 +48,111 @@ public class AwsResponse {
     }
 
     public String getBody() {
+        if (streaming) {
+            throw new IllegalStateException("The body of a streaming response can only be read from getContent()");
+        }
         return body;
     }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * @return The number of bytes in the body, or -1 for a streaming response
+     */
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    /**
+     * Be told how many bytes of a streaming response were read, once its body is closed
+     *
+     * @param listener Receives the number of bytes read
+     */
+    public void onContentClosed(final LongConsumer listener) {
+        if (content != null) {
+            content.listener = listener;
+        }
+    }
+
+    /**
+     * The unread body of a streaming response. The connection is returned to the pool once it is closed.
+     *
+     * @return InputStream
+     */
+    public InputStream getContent() {
+        return content != null ? content : httpResponse.getContent();
+    }
+
+    /**
+     * Copy the body of a streaming response to the output, and release the connection
+     *
+     * @param outputStream The OutputStream
+     * @throws IOException Throws IOException when the body cannot be copied
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        try (InputStream content = getContent()) {
+            IOUtils.copy(content, outputStream);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (streaming && content != null) {
+            IOUtils.closeQuietly(content, null);
+        }
+    }
+
+    /**
+     * Counts the bytes read from a streaming response, and reports them once when it is closed
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+        private boolean closed;
+        private volatile LongConsumer listener;
+
+        private CountingInputStream(final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int read = super.read();
+            if (read >= 0) {
+                count++;
+            }
+            return read;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            final int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (!closed) {
+                    closed = true;
+                    if (listener != null) {
+                        listener.accept(count);
+                    }
+                }
+            }
+        }
+    }
 }
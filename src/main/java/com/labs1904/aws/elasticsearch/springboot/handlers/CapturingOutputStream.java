@@ -0,0 +1,60 @@
+package com.labs1904.aws.elasticsearch.springboot.handlers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Passes everything written through to the wrapped stream, while keeping a copy of it as long as the copy stays
+ * within a size limit. Used to cache a response while it is streamed to the client.
+ */
+public class CapturingOutputStream extends FilterOutputStream {
+
+    private final int limit;
+    private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+    /**
+     * @param outputStream The stream to write through to, left open
+     * @param limit The largest number of bytes to keep a copy of
+     */
+    public CapturingOutputStream(final OutputStream outputStream, final int limit) {
+        super(outputStream);
+        this.limit = limit;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        out.write(b);
+        capture(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        out.write(b, off, len);
+        capture(b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    /**
+     * @return Everything written, or null when more than the limit was written
+     */
+    public byte[] toByteArray() {
+        return copy != null ? copy.toByteArray() : null;
+    }
+
+    private void capture(final byte[] b, final int off, final int len) {
+        if (copy == null) {
+            return;
+        }
+        if (copy.size() + len > limit) {
+            copy = null;
+            return;
+        }
+        copy.write(b, off, len);
+    }
+}
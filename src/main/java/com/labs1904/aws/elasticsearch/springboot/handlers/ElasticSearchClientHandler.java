@@ -8,25 +8,38 @@ import com.amazonaws.http.AmazonHttpClient;
 import com.amazonaws.http.ExecutionContext;
 import com.amazonaws.http.HttpResponseHandler;
 import com.amazonaws.http.JsonResponseHandler;
+import com.amazonaws.http.apache.client.impl.ConnectionManagerAwareHttpClient;
 import com.amazonaws.protocol.json.JsonOperationMetadata;
 import com.amazonaws.protocol.json.SdkStructuredPlainJsonFactory;
 import com.amazonaws.transform.JsonErrorUnmarshaller;
 import com.amazonaws.transform.JsonUnmarshallerContext;
 import com.amazonaws.transform.Unmarshaller;
 import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.pool.ConnPoolControl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.lang.reflect.Field;
 import java.util.Collections;
 
 public class ElasticSearchClientHandler extends AmazonWebServiceClient {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ElasticSearchClientHandler.class);
+
     private final HttpResponseHandler<AmazonServiceException> httpResponseHandler;
     private final JsonResponseHandler<AwsResponse> responseHandler;
+    private final JsonResponseHandler<AwsResponse> streamingResponseHandler;
 
     public ElasticSearchClientHandler(ClientConfiguration clientConfiguration) {
+        // The super constructor builds the AmazonHttpClient, and with it the connection pool, from the clientConfiguration
         super(clientConfiguration);
-        AmazonHttpClient client = new AmazonHttpClient(clientConfiguration);
         final JsonOperationMetadata metadata = new JsonOperationMetadata().withHasStreamingSuccessResponse(false).withPayloadJson(false);
         final Unmarshaller<AwsResponse, JsonUnmarshallerContext> responseUnmarshaller = in -> new AwsResponse(in.getHttpResponse());
         this.responseHandler = SdkStructuredPlainJsonFactory.SDK_JSON_FACTORY.createResponseHandler(metadata, responseUnmarshaller);
+        // A streaming success response leaves the connection open, so that the body can be read after execute returns
+        final JsonOperationMetadata streamingMetadata = new JsonOperationMetadata().withHasStreamingSuccessResponse(true).withPayloadJson(false);
+        final Unmarshaller<AwsResponse, JsonUnmarshallerContext> streamingUnmarshaller = in -> new AwsResponse(in.getHttpResponse(), true);
+        this.streamingResponseHandler = SdkStructuredPlainJsonFactory.SDK_JSON_FACTORY.createResponseHandler(streamingMetadata, streamingUnmarshaller);
         JsonErrorUnmarshaller defaultErrorUnmarshaller = new JsonErrorUnmarshaller(AmazonServiceException.class, null) {
             @Override
             public AmazonServiceException unmarshall(JsonNode json) {
@@ -35,10 +48,39 @@ public class ElasticSearchClientHandler extends AmazonWebServiceClient {
         };
 
         this.httpResponseHandler = SdkStructuredPlainJsonFactory.SDK_JSON_FACTORY.createErrorResponseHandler(Collections.singletonList(defaultErrorUnmarshaller), null);
-        super.client = client;
+    }
+
+    /**
+     * The pool of connections to ElasticSearch. The SDK keeps its HTTP client private, so it is read reflectively.
+     *
+     * @return The pool, or null when it cannot be reached in this version of the SDK
+     */
+    public ConnPoolControl<?> getConnectionPool() {
+        try {
+            final Field httpClient = AmazonHttpClient.class.getDeclaredField("httpClient");
+            httpClient.setAccessible(true);
+            final HttpClientConnectionManager connectionManager =
+                    ((ConnectionManagerAwareHttpClient) httpClient.get(this.client)).getHttpClientConnectionManager();
+            return connectionManager instanceof ConnPoolControl ? (ConnPoolControl<?>) connectionManager : null;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.warn("Connection pool metrics are not available: {}", e.getMessage());
+            return null;
+        }
     }
 
     public AwsResponse execute(ExecutionContext context, Request request){
         return this.client.execute(request, responseHandler, httpResponseHandler, context).getAwsResponse();
     }
+
+    /**
+     * Execute the request without reading the response body. The returned AwsResponse must be closed to release the
+     * connection.
+     *
+     * @param context The ExecutionContext
+     * @param request The Request
+     * @return AwsResponse
+     */
+    public AwsResponse executeStreaming(ExecutionContext context, Request request){
+        return this.client.execute(request, streamingResponseHandler, httpResponseHandler, context).getAwsResponse();
+    }
 }
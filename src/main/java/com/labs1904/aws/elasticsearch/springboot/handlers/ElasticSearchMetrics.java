@@ -0,0 +1,180 @@
+package com.labs1904.aws.elasticsearch.springboot.handlers;
+
+import com.amazonaws.Request;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.http.pool.ConnPoolControl;
+import org.apache.http.pool.PoolStats;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Metrics of the requests sent to ElasticSearch, and of the connection pool they are sent through.
+ *
+ * Requests are tagged with their operation, taken from the ElasticSearch API in the request path, so that the number
+ * of time series does not grow with the number of documents. The time ElasticSearch reports in 'took' is recorded
+ * apart from the time of the whole request, which also covers signing, the network and reading the response.
+ */
+@Named
+public class ElasticSearchMetrics {
+
+    private static final String TOOK_PREFIX = "{\"took\":";
+
+    private final MeterRegistry meterRegistry;
+
+    @Inject
+    public ElasticSearchMetrics(final MeterRegistry meterRegistry, final ElasticSearchClientHandler elasticSearchClientHandler) {
+        this.meterRegistry = meterRegistry;
+
+        final ConnPoolControl<?> pool = elasticSearchClientHandler.getConnectionPool();
+        if (pool != null) {
+            connections(pool, "leased", PoolStats::getLeased);
+            connections(pool, "available", PoolStats::getAvailable);
+            connections(pool, "pending", PoolStats::getPending);
+            Gauge.builder("elasticsearch.pool.max", pool, p -> p.getTotalStats().getMax())
+                    .description("Most connections the pool may open to ElasticSearch")
+                    .register(meterRegistry);
+        }
+    }
+
+    private void connections(final ConnPoolControl<?> pool, final String state, final ToDoubleFunction<PoolStats> stat) {
+        Gauge.builder("elasticsearch.pool.connections", pool, p -> stat.applyAsDouble(p.getTotalStats()))
+                .description("Connections to ElasticSearch that are in use, idle in the pool, or being waited for")
+                .tag("state", state)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Name the operation of a request after the ElasticSearch API in its path, e.g. search, bulk or update. Requests
+     * to a document itself are named after the HTTP method: index, get or delete.
+     *
+     * @param request The Request
+     * @return The operation
+     */
+    public static String operation(final Request<?> request) {
+        final String[] segments = request.getEndpoint().getPath().split("/");
+        for (int i = 0; i < segments.length; i++) {
+            if (segments[i].startsWith("_")) {
+                if ("_search".equals(segments[i]) && i + 1 < segments.length && "scroll".equals(segments[i + 1])) {
+                    return "scroll";
+                }
+                return segments[i].substring(1);
+            }
+        }
+        switch (request.getHttpMethod()) {
+            case GET:
+            case HEAD:
+                return "get";
+            case DELETE:
+                return "delete";
+            default:
+                return "index";
+        }
+    }
+
+    /**
+     * @param operation The operation
+     * @param status The HTTP status of the response, or 0 when no response was received
+     * @param nanos The time from signing the request until the response was received
+     */
+    public void recordRequest(final String operation, final int status, final long nanos) {
+        Timer.builder("elasticsearch.requests")
+                .description("Requests to ElasticSearch, until the response is received")
+                .tags("operation", operation, "status", status > 0 ? String.valueOf(status) : "none")
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param operation The operation
+     * @param bytes The size of the request body as sent, after compression
+     */
+    public void recordRequestSize(final String operation, final long bytes) {
+        size("elasticsearch.request.size", "Size of request bodies sent to ElasticSearch", operation, bytes);
+    }
+
+    /**
+     * @param operation The operation
+     * @param bytes The size of the response body as read, after decompression
+     */
+    public void recordResponseSize(final String operation, final long bytes) {
+        size("elasticsearch.response.size", "Size of response bodies read from ElasticSearch", operation, bytes);
+    }
+
+    private void size(final String name, final String description, final String operation, final long bytes) {
+        DistributionSummary.builder(name)
+                .description(description)
+                .baseUnit("bytes")
+                .tag("operation", operation)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(bytes);
+    }
+
+    /**
+     * @param operation The operation
+     * @param millis The 'took' time of the response, ignored when negative
+     */
+    public void recordTook(final String operation, final long millis) {
+        if (millis < 0) {
+            return;
+        }
+        Timer.builder("elasticsearch.took")
+                .description("Time ElasticSearch reports it spent on the request")
+                .tag("operation", operation)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Record the 'took' time of a response body, when the body starts with it. ElasticSearch writes 'took' first.
+     *
+     * @param operation The operation
+     * @param body The response body
+     */
+    public void recordTook(final String operation, final String body) {
+        if (body == null || !body.startsWith(TOOK_PREFIX)) {
+            return;
+        }
+        int i = TOOK_PREFIX.length();
+        while (i < body.length() && body.charAt(i) == ' ') {
+            i++;
+        }
+        long millis = 0;
+        int digits = 0;
+        for (; i < body.length() && Character.isDigit(body.charAt(i)); i++, digits++) {
+            millis = millis * 10 + (body.charAt(i) - '0');
+        }
+        if (digits > 0) {
+            recordTook(operation, millis);
+        }
+    }
+
+    /**
+     * Remove the 'took' time from the start of a response body. 'took' is only requested for the metrics, so it is
+     * left out of the bodies that are returned to the client.
+     *
+     * @param body The response body
+     * @return The body without 'took'
+     */
+    public static String withoutTook(final String body) {
+        if (body == null || !body.startsWith(TOOK_PREFIX)) {
+            return body;
+        }
+        int i = TOOK_PREFIX.length();
+        while (i < body.length() && (body.charAt(i) == ' ' || Character.isDigit(body.charAt(i)))) {
+            i++;
+        }
+        if (i < body.length() && body.charAt(i) == ',') {
+            return "{" + body.substring(i + 1);
+        }
+        return "{" + body.substring(i);
+    }
+}
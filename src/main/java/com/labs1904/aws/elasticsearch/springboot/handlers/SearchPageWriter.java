@@ -0,0 +1,108 @@
+package com.labs1904.aws.elasticsearch.springboot.handlers;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.labs1904.aws.elasticsearch.springboot.models.SearchCursor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Copies a page of ElasticSearch search results to the client token by token, so the page is never held in memory.
+ * The sort values of every hit and the point in time id are left out of the copy, and instead become the opaque
+ * 'cursor' of the next page, appended at the end of the response. The cursor is only added when the page is full.
+ * The 'took' time is left out too, and returned to the caller for its metrics.
+ */
+public class SearchPageWriter {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final TypeReference<List<Object>> SORT_VALUES = new TypeReference<List<Object>>() { };
+
+    private SearchPageWriter() {
+        throw new IllegalStateException("Utility Class");
+    }
+
+    /**
+     * @param content The ElasticSearch response, closed once it is copied
+     * @param outputStream The client response, left open
+     * @param size The requested page size
+     * @return The 'took' time of the response, or -1 when it has none
+     */
+    public static long write(final InputStream content, final OutputStream outputStream, final int size) throws IOException {
+        final JsonFactory jsonFactory = OBJECT_MAPPER.getFactory();
+        try (JsonParser parser = jsonFactory.createParser(content);
+             JsonGenerator generator = jsonFactory.createGenerator(outputStream)
+                     .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+            final Page page = new Page();
+            generator.writeStartObject();
+            if (parser.nextToken() == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    final String field = parser.getCurrentName();
+                    parser.nextToken();
+                    if ("pit_id".equals(field)) {
+                        page.pit = parser.getText();
+                    } else if ("took".equals(field)) {
+                        page.took = parser.getLongValue();
+                    } else if ("hits".equals(field) && parser.currentToken() == JsonToken.START_OBJECT) {
+                        generator.writeFieldName(field);
+                        copyHits(parser, generator, page);
+                    } else {
+                        generator.writeFieldName(field);
+                        generator.copyCurrentStructure(parser);
+                    }
+                }
+            }
+            if (page.hits >= size && page.lastSort != null) {
+                generator.writeStringField("cursor", new SearchCursor(page.lastSort, page.pit).encode());
+            }
+            generator.writeEndObject();
+            return page.took;
+        }
+    }
+
+    /**
+     * Copy the outer 'hits' object, leaving out the 'sort' values of each hit
+     */
+    private static void copyHits(final JsonParser parser, final JsonGenerator generator, final Page page) throws IOException {
+        generator.writeStartObject();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            generator.writeFieldName(field);
+            if (parser.nextToken() != JsonToken.START_ARRAY || !"hits".equals(field)) {
+                generator.copyCurrentStructure(parser);
+                continue;
+            }
+            generator.writeStartArray();
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                page.hits++;
+                generator.writeStartObject();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    final String hitField = parser.getCurrentName();
+                    parser.nextToken();
+                    if ("sort".equals(hitField)) {
+                        page.lastSort = OBJECT_MAPPER.readValue(parser, SORT_VALUES);
+                    } else {
+                        generator.writeFieldName(hitField);
+                        generator.copyCurrentStructure(parser);
+                    }
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+    }
+
+    private static class Page {
+        private int hits;
+        private List<Object> lastSort;
+        private String pit;
+        private long took = -1;
+    }
+}
@@ -0,0 +1,44 @@
+package com.labs1904.aws.elasticsearch.springboot.models;
+
+public class BulkItemResult {
+    private String id;
+    private int status;
+    private String error;
+
+    public BulkItemResult() {
+    }
+
+    public BulkItemResult(String id, int status, String error) {
+        this.id = id;
+        this.status = status;
+        this.error = error;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public boolean isSuccessful() {
+        return error == null && status >= 200 && status < 300;
+    }
+}
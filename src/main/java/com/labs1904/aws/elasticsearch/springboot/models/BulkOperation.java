@@ -0,0 +1,43 @@
+package com.labs1904.aws.elasticsearch.springboot.models;
+
+/**
+ * A single action within an ElasticSearch _bulk request
+ */
+public class BulkOperation {
+    public enum Type {
+        /** Create or overwrite the document */
+        INDEX,
+        /** Merge the Movie into an existing document, failing when the document does not exist */
+        UPDATE
+    }
+
+    private final Type type;
+    private final String id;
+    private final Movie movie;
+
+    public BulkOperation(Type type, String id, Movie movie) {
+        this.type = type;
+        this.id = id;
+        this.movie = movie;
+    }
+
+    public static BulkOperation index(Movie movie) {
+        return new BulkOperation(Type.INDEX, movie.getId() != null ? movie.getId().toString() : null, movie);
+    }
+
+    public static BulkOperation update(Long id, Movie movie) {
+        return new BulkOperation(Type.UPDATE, id != null ? id.toString() : null, movie);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Movie getMovie() {
+        return movie;
+    }
+}
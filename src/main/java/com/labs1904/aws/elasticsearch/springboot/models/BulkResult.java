@@ -0,0 +1,43 @@
+package com.labs1904.aws.elasticsearch.springboot.models;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class BulkResult {
+    private List<BulkItemResult> items;
+
+    public BulkResult() {
+    }
+
+    public BulkResult(List<BulkItemResult> items) {
+        this.items = items;
+    }
+
+    public List<BulkItemResult> getItems() {
+        return items;
+    }
+
+    public void setItems(List<BulkItemResult> items) {
+        this.items = items;
+    }
+
+    public int getSucceeded() {
+        return (int) items.stream().filter(BulkItemResult::isSuccessful).count();
+    }
+
+    public int getFailed() {
+        return items.size() - getSucceeded();
+    }
+
+    /**
+     * The items that were not indexed, so that only these need to be sent again
+     *
+     * @return The failed items
+     */
+    @JsonIgnore
+    public List<BulkItemResult> getFailures() {
+        return items.stream().filter(item -> !item.isSuccessful()).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,53 @@
+package com.labs1904.aws.elasticsearch.springboot.models;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A count of Movies that can be requested from the facets API, and the field of the Movie it counts by
+ */
+public enum Facet {
+    @JsonProperty("genre")
+    GENRE("genre", "genre.raw", true),
+    @JsonProperty("decade")
+    DECADE("decade", "year", false),
+    @JsonProperty("mpaaRating")
+    MPAA_RATING("mpaaRating", "mpaaRating.raw", true),
+    @JsonProperty("language")
+    LANGUAGE("language", "language.raw", true),
+    @JsonProperty("country")
+    COUNTRY("country", "country.raw", true),
+    @JsonProperty("starRating")
+    STAR_RATING("starRating", "starRating", false);
+
+    private final String name;
+    private final String field;
+    private final boolean keyword;
+
+    Facet(final String name, final String field, final boolean keyword) {
+        this.name = name;
+        this.field = field;
+        this.keyword = keyword;
+    }
+
+    /**
+     * @return The name of the facet in requests and responses, which is also the name of its ElasticSearch aggregation
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The ElasticSearch field that is counted. Text values are counted by their raw keyword sub-field, which
+     * keeps the values as they were written, where the field itself is lowercased for searching.
+     */
+    public String getField() {
+        return field;
+    }
+
+    /**
+     * @return True when the field has to be mapped as a keyword before the facet can be counted
+     */
+    public boolean isKeyword() {
+        return keyword;
+    }
+}
@@ -0,0 +1,56 @@
+package com.labs1904.aws.elasticsearch.springboot.models;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * One value of a facet, and the number of Movies with that value. Range buckets also have their bounds.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class FacetBucket {
+    private String key;
+    private long count;
+    private Double from;
+    private Double to;
+
+    public FacetBucket() {
+    }
+
+    public FacetBucket(String key, long count, Double from, Double to) {
+        this.key = key;
+        this.count = count;
+        this.from = from;
+        this.to = to;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public Double getFrom() {
+        return from;
+    }
+
+    public void setFrom(Double from) {
+        this.from = from;
+    }
+
+    public Double getTo() {
+        return to;
+    }
+
+    public void setTo(Double to) {
+        this.to = to;
+    }
+}
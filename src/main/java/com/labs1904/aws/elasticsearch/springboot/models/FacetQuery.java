@@ -0,0 +1,27 @@
+package com.labs1904.aws.elasticsearch.springboot.models;
+
+import java.util.Set;
+
+/**
+ * The facets to count over the Movies that match a query
+ */
+public class FacetQuery {
+    private MovieQuery query;
+    private Set<Facet> facets;
+
+    public MovieQuery getQuery() {
+        return query;
+    }
+
+    public void setQuery(MovieQuery query) {
+        this.query = query;
+    }
+
+    public Set<Facet> getFacets() {
+        return facets;
+    }
+
+    public void setFacets(Set<Facet> facets) {
+        this.facets = facets;
+    }
+}
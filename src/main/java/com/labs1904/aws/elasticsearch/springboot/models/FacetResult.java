@@ -0,0 +1,33 @@
+package com.labs1904.aws.elasticsearch.springboot.models;
+
+import java.util.List;
+import java.util.Map;
+
+public class FacetResult {
+    private long total;
+    private Map<String, List<FacetBucket>> facets;
+
+    public FacetResult() {
+    }
+
+    public FacetResult(long total, Map<String, List<FacetBucket>> facets) {
+        this.total = total;
+        this.facets = facets;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public void setTotal(long total) {
+        this.total = total;
+    }
+
+    public Map<String, List<FacetBucket>> getFacets() {
+        return facets;
+    }
+
+    public void setFacets(Map<String, List<FacetBucket>> facets) {
+        this.facets = facets;
+    }
+}
@@ -0,0 +1,60 @@
+package com.labs1904.aws.elasticsearch.springboot.models;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A partial change to a Movie: fields to set, and values to add to or remove from its set-valued fields
+ */
+public class MoviePatch {
+    /** The fields of a Movie that hold a set of values */
+    public static final Set<String> SET_FIELDS = Collections.unmodifiableSet(new HashSet<>(
+            Arrays.asList("genre", "directors", "producers", "writers", "cast")));
+
+    private Map<String, Object> doc;
+    private Map<String, List<Object>> add;
+    private Map<String, List<Object>> remove;
+
+    public Map<String, Object> getDoc() {
+        return doc;
+    }
+
+    public void setDoc(Map<String, Object> doc) {
+        this.doc = doc;
+    }
+
+    public Map<String, List<Object>> getAdd() {
+        return add;
+    }
+
+    public void setAdd(Map<String, List<Object>> add) {
+        this.add = add;
+    }
+
+    public Map<String, List<Object>> getRemove() {
+        return remove;
+    }
+
+    public void setRemove(Map<String, List<Object>> remove) {
+        this.remove = remove;
+    }
+
+    /**
+     * @return True when the patch only sets fields, and can be sent as a partial 'doc' without a script
+     */
+    @JsonIgnore
+    public boolean isDocOnly() {
+        return (add == null || add.isEmpty()) && (remove == null || remove.isEmpty());
+    }
+
+    @JsonIgnore
+    public boolean isEmpty() {
+        return isDocOnly() && (doc == null || doc.isEmpty());
+    }
+}
@@ -6,12 +6,18 @@ public class MovieQuery {
     private Long id;
     private String title;
     private long year;
+    private Long minYear; //range search
+    private Long maxYear; //range search
     private Set<String> genre;
     private String storyline; //fuzzy search
     private String synopsis; //fuzzy search
     private String mpaaRating;
-    private Double starRating; //range search
-    private long duration; //range search
+    private Double starRating;
+    private Double minStarRating; //range search
+    private Double maxStarRating; //range search
+    private long duration;
+    private Long minDuration; //range search
+    private Long maxDuration; //range search
     private String imdbUrl;
     private String language;
     private String country;
@@ -40,6 +46,22 @@ public class MovieQuery {
         this.year = year;
     }
 
+    public Long getMinYear() {
+        return minYear;
+    }
+
+    public void setMinYear(Long minYear) {
+        this.minYear = minYear;
+    }
+
+    public Long getMaxYear() {
+        return maxYear;
+    }
+
+    public void setMaxYear(Long maxYear) {
+        this.maxYear = maxYear;
+    }
+
     public Set<String> getGenre() {
         return genre;
     }
@@ -80,6 +102,22 @@ public class MovieQuery {
         this.starRating = starRating;
     }
 
+    public Double getMinStarRating() {
+        return minStarRating;
+    }
+
+    public void setMinStarRating(Double minStarRating) {
+        this.minStarRating = minStarRating;
+    }
+
+    public Double getMaxStarRating() {
+        return maxStarRating;
+    }
+
+    public void setMaxStarRating(Double maxStarRating) {
+        this.maxStarRating = maxStarRating;
+    }
+
     public long getDuration() {
         return duration;
     }
@@ -88,6 +126,22 @@ public class MovieQuery {
         this.duration = duration;
     }
 
+    public Long getMinDuration() {
+        return minDuration;
+    }
+
+    public void setMinDuration(Long minDuration) {
+        this.minDuration = minDuration;
+    }
+
+    public Long getMaxDuration() {
+        return maxDuration;
+    }
+
+    public void setMaxDuration(Long maxDuration) {
+        this.maxDuration = maxDuration;
+    }
+
     public String getImdbUrl() {
         return imdbUrl;
     }
@@ -0,0 +1,48 @@
+package com.labs1904.aws.elasticsearch.springboot.models;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.List;
+
+public class MultiSearchItemResult {
+    private int status;
+    private List<JsonNode> movies;
+    private String error;
+
+    public MultiSearchItemResult() {
+    }
+
+    public MultiSearchItemResult(int status, List<JsonNode> movies, String error) {
+        this.status = status;
+        this.movies = movies;
+        this.error = error;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    public List<JsonNode> getMovies() {
+        return movies;
+    }
+
+    public void setMovies(List<JsonNode> movies) {
+        this.movies = movies;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public boolean isSuccessful() {
+        return error == null && status >= 200 && status < 300;
+    }
+}
@@ -0,0 +1,54 @@
+package com.labs1904.aws.elasticsearch.springboot.models;
+
+import java.util.Set;
+
+/**
+ * One search within a multi search request
+ */
+public class MultiSearchQuery {
+    private MovieQuery query;
+    private boolean fuzzy;
+    private int from;
+    private Integer size;
+    private Set<String> fields;
+
+    public MovieQuery getQuery() {
+        return query;
+    }
+
+    public void setQuery(MovieQuery query) {
+        this.query = query;
+    }
+
+    public boolean isFuzzy() {
+        return fuzzy;
+    }
+
+    public void setFuzzy(boolean fuzzy) {
+        this.fuzzy = fuzzy;
+    }
+
+    public int getFrom() {
+        return from;
+    }
+
+    public void setFrom(int from) {
+        this.from = from;
+    }
+
+    public Integer getSize() {
+        return size;
+    }
+
+    public void setSize(Integer size) {
+        this.size = size;
+    }
+
+    public Set<String> getFields() {
+        return fields;
+    }
+
+    public void setFields(Set<String> fields) {
+        this.fields = fields;
+    }
+}
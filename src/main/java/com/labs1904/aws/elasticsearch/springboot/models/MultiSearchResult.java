@@ -0,0 +1,30 @@
+package com.labs1904.aws.elasticsearch.springboot.models;
+
+import java.util.List;
+
+public class MultiSearchResult {
+    private List<MultiSearchItemResult> items;
+
+    public MultiSearchResult() {
+    }
+
+    public MultiSearchResult(List<MultiSearchItemResult> items) {
+        this.items = items;
+    }
+
+    public List<MultiSearchItemResult> getItems() {
+        return items;
+    }
+
+    public void setItems(List<MultiSearchItemResult> items) {
+        this.items = items;
+    }
+
+    public int getSucceeded() {
+        return (int) items.stream().filter(MultiSearchItemResult::isSuccessful).count();
+    }
+
+    public int getFailed() {
+        return items.size() - getSucceeded();
+    }
+}
@@ -0,0 +1,69 @@
+package com.labs1904.aws.elasticsearch.springboot.models;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Position of a page of search results: the sort values of the last hit on the previous page, and the point in time
+ * the pages are read from, when the cluster supports it. Handed to clients as an opaque token.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SearchCursor {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private List<Object> after;
+    private String pit;
+
+    public SearchCursor() {
+    }
+
+    public SearchCursor(List<Object> after, String pit) {
+        this.after = after;
+        this.pit = pit;
+    }
+
+    public List<Object> getAfter() {
+        return after;
+    }
+
+    public void setAfter(List<Object> after) {
+        this.after = after;
+    }
+
+    public String getPit() {
+        return pit;
+    }
+
+    public void setPit(String pit) {
+        this.pit = pit;
+    }
+
+    /**
+     * @return The cursor as an opaque, URL safe token
+     */
+    public String encode() {
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(OBJECT_MAPPER.writeValueAsBytes(this));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param token A token created by encode()
+     * @return The cursor
+     * @throws IllegalArgumentException Throws IllegalArgumentException when the token is not a valid cursor
+     */
+    public static SearchCursor decode(final String token) {
+        try {
+            return OBJECT_MAPPER.readValue(Base64.getUrlDecoder().decode(token), SearchCursor.class);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.labs1904.aws.elasticsearch.springboot.models;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * The _source fields to return with each hit: only the included fields when there are any, less the excluded fields.
+ * Field names may use wildcards, and dots for nested fields such as cast.biography.
+ */
+public class SourceFilter {
+    private final Set<String> includes;
+    private final Set<String> excludes;
+
+    public SourceFilter(Set<String> includes, Set<String> excludes) {
+        this.includes = includes != null ? includes : Collections.emptySet();
+        this.excludes = excludes != null ? excludes : Collections.emptySet();
+    }
+
+    public Set<String> getIncludes() {
+        return includes;
+    }
+
+    public Set<String> getExcludes() {
+        return excludes;
+    }
+
+    /**
+     * @return True when the whole _source is returned
+     */
+    public boolean isEmpty() {
+        return includes.isEmpty() && excludes.isEmpty();
+    }
+}
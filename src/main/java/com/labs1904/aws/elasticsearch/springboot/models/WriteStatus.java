@@ -0,0 +1,31 @@
+package com.labs1904.aws.elasticsearch.springboot.models;
+
+public class WriteStatus {
+    public enum State {
+        PENDING,
+        INDEXED,
+        FAILED
+    }
+
+    private final String id;
+    private final State state;
+    private final String error;
+
+    public WriteStatus(String id, State state, String error) {
+        this.id = id;
+        this.state = state;
+        this.error = error;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,199 @@
+package com.labs1904.aws.elasticsearch.springboot.services;
+
+import com.amazonaws.Request;
+import com.labs1904.aws.elasticsearch.springboot.config.ConfigurationInfo;
+import com.labs1904.aws.elasticsearch.springboot.exceptions.CircuitOpenException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops sending requests to an ElasticSearch endpoint for a while once too many of the recent ones failed. Every
+ * endpoint has its own circuit, so a failing read replica does not stop requests to the primary domain.
+ *
+ * The outcome of the last requests is kept in a fixed size window. When the share of failures in a window with enough
+ * requests reaches the threshold, the circuit opens and every request fails fast. Once the open time has passed, a
+ * single request is let through as a probe: the circuit closes when it succeeds, and opens again when it fails.
+ * Only answers that say the cluster is unhealthy count as failures, a 404 or a 409 shows the cluster is working.
+ */
+@Named
+public class CircuitBreaker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private final ConfigurationInfo.CircuitBreaker settings;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentMap<String, Circuit> circuits = new ConcurrentHashMap<>();
+
+    @Inject
+    public CircuitBreaker(final ConfigurationInfo configurationInfo, final MeterRegistry meterRegistry) {
+        this.settings = configurationInfo.getCircuitBreaker();
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @param uri Any URI of the endpoint
+     * @return The scheme, host and port that identify the endpoint
+     */
+    public static String endpoint(final URI uri) {
+        return uri.getScheme() + "://" + uri.getAuthority();
+    }
+
+    /**
+     * @param request The Request
+     * @return The circuit of the endpoint the request is sent to
+     */
+    public Circuit circuit(final Request<?> request) {
+        return circuit(endpoint(request.getEndpoint()));
+    }
+
+    /**
+     * @param endpoint The endpoint, as returned by endpoint(URI)
+     * @return The circuit of the endpoint
+     */
+    public Circuit circuit(final String endpoint) {
+        return circuits.computeIfAbsent(endpoint, Circuit::new);
+    }
+
+    public final class Circuit {
+        private final String endpoint;
+        private final boolean[] window;
+        private final Counter rejected;
+
+        private State state = State.CLOSED;
+        private int calls;
+        private int failures;
+        private int next;
+        private long openedNanos;
+        private boolean probing;
+
+        private Circuit(final String endpoint) {
+            this.endpoint = endpoint;
+            this.window = new boolean[Math.max(1, settings.getWindowSize())];
+            this.rejected = Counter.builder("elasticsearch.circuit.rejected")
+                    .description("Requests to ElasticSearch that were not sent because the circuit was open")
+                    .tag("endpoint", endpoint)
+                    .register(meterRegistry);
+
+            Gauge.builder("elasticsearch.circuit.state", this, circuit -> circuit.getState().ordinal())
+                    .description("State of the circuit breaker: 0 closed, 1 half open, 2 open")
+                    .tag("endpoint", endpoint)
+                    .register(meterRegistry);
+        }
+
+        public synchronized State getState() {
+            return state;
+        }
+
+        /**
+         * @return True when a request would be let through now
+         */
+        public synchronized boolean isAvailable() {
+            return !settings.isEnabled() || state == State.CLOSED
+                    || (state == State.OPEN && remainingNanos() <= 0) || (state == State.HALF_OPEN && !probing);
+        }
+
+        /**
+         * Ask to send a request. Every call that returns must be followed by exactly one of onSuccess, onFailure or
+         * release.
+         *
+         * @throws CircuitOpenException When the circuit is open, or the probe of a half open circuit is still running
+         */
+        public synchronized void acquire() {
+            if (!settings.isEnabled() || state == State.CLOSED) {
+                return;
+            }
+            final long remainingNanos = remainingNanos();
+            if (state == State.OPEN && remainingNanos <= 0) {
+                state = State.HALF_OPEN;
+            }
+            if (state == State.HALF_OPEN && !probing) {
+                probing = true;
+                return;
+            }
+            rejected.increment();
+            throw new CircuitOpenException("ElasticSearch is unhealthy, requests are paused",
+                    Math.max(TimeUnit.NANOSECONDS.toMillis(remainingNanos), 0));
+        }
+
+        /**
+         * The request was answered by a healthy cluster
+         */
+        public synchronized void onSuccess() {
+            if (state == State.HALF_OPEN && probing) {
+                LOGGER.info("ElasticSearch at {} answered the probe request, closing the circuit.", endpoint);
+                reset(State.CLOSED);
+                return;
+            }
+            record(false);
+        }
+
+        /**
+         * The request failed in a way that shows the cluster is unhealthy
+         */
+        public synchronized void onFailure() {
+            if (state == State.HALF_OPEN && probing) {
+                LOGGER.warn("The probe request to ElasticSearch at {} failed, keeping the circuit open.", endpoint);
+                open();
+                return;
+            }
+            record(true);
+            if (settings.isEnabled() && state == State.CLOSED && calls >= settings.getMinimumCalls()
+                    && failures >= settings.getFailureRateThreshold() * calls) {
+                LOGGER.warn("{} of the last {} requests to ElasticSearch at {} failed, opening the circuit for {}ms.",
+                        failures, calls, endpoint, settings.getOpenMillis());
+                open();
+            }
+        }
+
+        /**
+         * The request ended without saying anything about the health of the cluster
+         */
+        public synchronized void release() {
+            if (state == State.HALF_OPEN) {
+                probing = false;
+            }
+        }
+
+        private long remainingNanos() {
+            return openedNanos + TimeUnit.MILLISECONDS.toNanos(settings.getOpenMillis()) - System.nanoTime();
+        }
+
+        private void record(final boolean failed) {
+            if (calls == window.length) {
+                failures -= window[next] ? 1 : 0;
+            } else {
+                calls++;
+            }
+            window[next] = failed;
+            failures += failed ? 1 : 0;
+            next = (next + 1) % window.length;
+        }
+
+        private void open() {
+            reset(State.OPEN);
+            openedNanos = System.nanoTime();
+        }
+
+        private void reset(final State newState) {
+            state = newState;
+            calls = 0;
+            failures = 0;
+            next = 0;
+            probing = false;
+        }
+    }
+}
@@ -1,56 +1,139 @@
 package com.labs1904.aws.elasticsearch.springboot.services;
 
 import com.amazonaws.*;
-import com.amazonaws.auth.AWS4Signer;
-import com.amazonaws.auth.AWSCredentials;
-import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
 import com.amazonaws.http.ExecutionContext;
 import com.amazonaws.http.HttpMethodName;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.labs1904.aws.elasticsearch.springboot.config.ConfigurationInfo;
 import com.labs1904.aws.elasticsearch.springboot.constants.ElasticSearchConstants;
+import com.labs1904.aws.elasticsearch.springboot.exceptions.CircuitOpenException;
+import com.labs1904.aws.elasticsearch.springboot.exceptions.ClusterUnavailableException;
+import com.labs1904.aws.elasticsearch.springboot.exceptions.ElasticSearchException;
+import com.labs1904.aws.elasticsearch.springboot.exceptions.FacetUnavailableException;
 import com.labs1904.aws.elasticsearch.springboot.exceptions.IdNotFoundException;
+import com.labs1904.aws.elasticsearch.springboot.exceptions.ThrottledException;
+import com.labs1904.aws.elasticsearch.springboot.exceptions.VersionConflictException;
+import com.labs1904.aws.elasticsearch.springboot.handlers.AwsRequestSigner;
 import com.labs1904.aws.elasticsearch.springboot.handlers.AwsResponse;
 import com.labs1904.aws.elasticsearch.springboot.handlers.ElasticSearchClientHandler;
+import com.labs1904.aws.elasticsearch.springboot.handlers.ElasticSearchMetrics;
+import com.labs1904.aws.elasticsearch.springboot.models.BulkItemResult;
+import com.labs1904.aws.elasticsearch.springboot.models.BulkOperation;
+import com.labs1904.aws.elasticsearch.springboot.models.BulkResult;
+import com.labs1904.aws.elasticsearch.springboot.models.Facet;
+import com.labs1904.aws.elasticsearch.springboot.models.FacetBucket;
+import com.labs1904.aws.elasticsearch.springboot.models.FacetQuery;
+import com.labs1904.aws.elasticsearch.springboot.models.FacetResult;
 import com.labs1904.aws.elasticsearch.springboot.models.Movie;
+import com.labs1904.aws.elasticsearch.springboot.models.MoviePatch;
 import com.labs1904.aws.elasticsearch.springboot.models.MovieQuery;
+import com.labs1904.aws.elasticsearch.springboot.models.MultiSearchItemResult;
+import com.labs1904.aws.elasticsearch.springboot.models.MultiSearchQuery;
+import com.labs1904.aws.elasticsearch.springboot.models.MultiSearchResult;
+import com.labs1904.aws.elasticsearch.springboot.models.SearchCursor;
+import com.labs1904.aws.elasticsearch.springboot.models.SourceFilter;
 import com.labs1904.aws.elasticsearch.springboot.util.StringUtils;
-import org.json.JSONArray;
+import io.micrometer.core.annotation.Timed;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.http.HttpStatus;
+import org.springframework.util.StreamUtils;
 
+import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import javax.inject.Named;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPOutputStream;
 
 @Named
 public class ElasticSearchService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ElasticSearchService.class);
 
-    private static final AWSCredentials AWS_CREDENTIALS = new DefaultAWSCredentialsProviderChain().getCredentials();
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<Map<String, Object>>() { };
+    private static final String MOVIE_PATCH_SCRIPT = "scripts/movie-patch.painless";
 
     @Inject
     private ConfigurationInfo configurationInfo;
 
+    @Inject
+    private ElasticSearchClientHandler elasticSearchClientHandler;
+
+    @Inject
+    private AwsRequestSigner awsRequestSigner;
+
+    @Inject
+    private SearchResultCache searchResultCache;
+
+    @Inject
+    private FacetCache facetCache;
+
+    @Inject
+    private KeywordFields keywordFields;
+
+    @Inject
+    private RequestCoalescer requestCoalescer;
+
+    @Inject
+    private ElasticSearchMetrics elasticSearchMetrics;
+
+    @Inject
+    private RetryPolicy retryPolicy;
+
+    @Inject
+    private CircuitBreaker circuitBreaker;
+
+    @Inject
+    private EndpointRouter endpointRouter;
+
+    @Inject
+    @Named("bulkExecutor")
+    private ExecutorService bulkExecutor;
+
+    private String moviePatchScript;
+    private String moviePatchScriptId;
+    private volatile boolean moviePatchScriptStored;
+
+    @PostConstruct
+    public void loadScripts() throws IOException {
+        try (InputStream script = new ClassPathResource(MOVIE_PATCH_SCRIPT).getInputStream()) {
+            moviePatchScript = StreamUtils.copyToString(script, StandardCharsets.UTF_8);
+        }
+        moviePatchScriptId = "movie-patch-" + Integer.toHexString(moviePatchScript.hashCode());
+    }
+
     /**
-     * Sign the request to AWS ElasticSearch using the AWS4Signer
+     *  Build the full URL, create request headers, and build Request object prior to signing the Request to send
+     *  to AWS ElasticSearch
      *
-     * @param request The Request
+     * @param url The URL
+     * @param json The request body
+     * @param parameters The request parameters
+     * @param httpMethodName The HTTPMethodName
+     * @return The Request
      */
-    private void signRequest(Request request) {
-        final String region = configurationInfo.getRegion();
-        final String serviceName = configurationInfo.getServiceName();
+    Request generateSignedRequest(final String url,
+                                  final String json,
+                                  final Map<String, List<String>> parameters,
+                                  final HttpMethodName httpMethodName) {
+        final byte[] body = json != null ? json.getBytes(StandardCharsets.UTF_8) : null;
 
-        final AWS4Signer aws4Signer = new AWS4Signer();
-        aws4Signer.setRegionName(region);
-        aws4Signer.setServiceName(serviceName);
-        aws4Signer.sign(request, AWS_CREDENTIALS);
+        return generateSignedRequest(url, body, ElasticSearchConstants.JSON_CONTENT_TYPE, parameters, httpMethodName);
     }
 
     /**
@@ -58,26 +141,56 @@ public class ElasticSearchService {
      *  to AWS ElasticSearch
      *
      * @param url The URL
-     * @param json The request body
+     * @param body The encoded request body
+     * @param contentType The content type of the request body
      * @param parameters The request parameters
      * @param httpMethodName The HTTPMethodName
      * @return The Request
      */
-    private Request generateSignedRequest(final String url,
-                                         final String json,
-                                         final Map<String, List<String>> parameters,
-                                         final HttpMethodName httpMethodName) {
+    Request generateSignedRequest(final String url,
+                                  final byte[] body,
+                                  final String contentType,
+                                  final Map<String, List<String>> parameters,
+                                  final HttpMethodName httpMethodName) {
+        return generateSignedRequest(endpointRouter.getPrimary(), url, body, contentType, parameters, httpMethodName);
+    }
 
-        final String endpoint = configurationInfo.getEndpoint() + "/" + url;
+    /**
+     *  Build the full URL on the given endpoint, create request headers, and build Request object prior to signing the
+     *  Request for the region of the endpoint
+     *
+     * @param target The endpoint to send the Request to
+     * @param url The URL
+     * @param body The encoded request body
+     * @param contentType The content type of the request body
+     * @param parameters The request parameters
+     * @param httpMethodName The HTTPMethodName
+     * @return The Request
+     */
+    private Request generateSignedRequest(final EndpointRouter.Target target,
+                                          final String url,
+                                          final byte[] body,
+                                          final String contentType,
+                                          final Map<String, List<String>> parameters,
+                                          final HttpMethodName httpMethodName) {
+
+        final String endpoint = target.getUrl() + "/" + url;
         final Map<String, String> headers = new HashMap<>();
-        headers.put("content-type", "application/json");
+        headers.put("content-type", contentType);
+
+        // The body is compressed before signing, so the signature covers the bytes that are sent
+        final byte[] content = compress(body, headers);
+        if (content != null) {
+            // Lets the HTTP client send a fixed length body instead of chunked transfer encoding
+            headers.put("Content-Length", String.valueOf(content.length));
+        }
 
         final Request request = new DefaultRequest(configurationInfo.getServiceName());
         request.setHeaders(headers);
 
-        // JSON is used for Creating and Updating objects in ElasticSearch
-        if (json != null) {
-            request.setContent(new ByteArrayInputStream(json.getBytes()));
+        // A body is used for Creating and Updating objects in ElasticSearch, and for bulk requests
+        if (content != null) {
+            request.setContent(new ByteArrayInputStream(content));
         }
         // Parameters are used for queries
         if (parameters != null) {
@@ -86,30 +199,180 @@ public class ElasticSearchService {
         request.setEndpoint(URI.create(endpoint));
         request.setHttpMethod(httpMethodName);
 
-        signRequest(request);
+        awsRequestSigner.sign(request, target.getRegion());
 
         return request;
     }
 
+    /**
+     * Gzip a request body that is at least the configured size, and mark it with a Content-Encoding header. Smaller
+     * bodies, and bodies that do not get smaller, are sent as they are.
+     *
+     * @param body The request body, may be null
+     * @param headers The request headers
+     * @return The body to send
+     */
+    private byte[] compress(final byte[] body, final Map<String, String> headers) {
+        final ConfigurationInfo.Compression settings = configurationInfo.getCompression();
+        if (body == null || !settings.isGzipRequests() || body.length < settings.getMinBytes()) {
+            return body;
+        }
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 2);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed) {
+            {
+                def.setLevel(settings.getLevel());
+            }
+        }) {
+            gzip.write(body);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to compress request body, sending it uncompressed.", e);
+            return body;
+        }
+        if (compressed.size() >= body.length) {
+            return body;
+        }
+        headers.put("Content-Encoding", ElasticSearchConstants.GZIP_CONTENT_ENCODING);
+        return compressed.toByteArray();
+    }
+
     /**
      * Submit the Request to AWS, and return the response
      *
      * @param request The Request
-     * @return AwsResponse
+     * @return AwsResponse, or null when ElasticSearch rejected the request
+     * @throws ElasticSearchException When ElasticSearch is throttling or unavailable, or the circuit is open
      */
-    private AwsResponse executeRequest(Request request) {
+    AwsResponse executeRequest(Request request) {
         try {
-            final ClientConfiguration configuration = new ClientConfiguration();
-            final ExecutionContext context = new ExecutionContext(true);
-            final ElasticSearchClientHandler client = new ElasticSearchClientHandler(configuration);
+            return call(request, false);
+        } catch (ElasticSearchException e) {
+            throw e;
+        } catch (Exception e) {
+            LOGGER.error("Error executing ElasticSearch Request.", e);
+        }
+        return null;
+    }
 
-            return client.execute(context, request);
+    /**
+     * Submit the Request to AWS, and return the response without reading its body
+     *
+     * @param request The Request
+     * @return AwsResponse, which must be closed to release the connection, or null when ElasticSearch rejected the request
+     * @throws ElasticSearchException When ElasticSearch is throttling or unavailable, or the circuit is open
+     */
+    AwsResponse executeStreamingRequest(Request request) {
+        try {
+            return call(request, true);
+        } catch (ElasticSearchException e) {
+            throw e;
         } catch (Exception e) {
             LOGGER.error("Error executing ElasticSearch Request.", e);
         }
         return null;
     }
 
+    /**
+     * Send the Request through the circuit breaker, and send it again when it failed because ElasticSearch was
+     * throttling or briefly unavailable, if the request is safe to repeat and the retry policy allows it
+     *
+     * @param request The Request
+     * @param streaming Leave the body unread, to be read from the response
+     * @return AwsResponse
+     * @throws ElasticSearchException When the last attempt failed because ElasticSearch was throttling or unavailable,
+     * or the circuit is open
+     */
+    private AwsResponse call(final Request request, final boolean streaming) {
+        final boolean idempotent = RetryPolicy.isIdempotent(request);
+        final CircuitBreaker.Circuit circuit = circuitBreaker.circuit(request);
+        retryPolicy.onRequest();
+        for (int attempt = 1; ; attempt++) {
+            circuit.acquire();
+            final SdkClientException failure;
+            try {
+                final AwsResponse response = send(request, streaming);
+                circuit.onSuccess();
+                return response;
+            } catch (SdkClientException e) {
+                if (!RetryPolicy.isRetryable(e)) {
+                    if (e instanceof AmazonServiceException) {
+                        circuit.onSuccess();
+                    } else {
+                        circuit.release();
+                    }
+                    throw e;
+                }
+                circuit.onFailure();
+                failure = e;
+            } catch (RuntimeException e) {
+                circuit.release();
+                throw e;
+            }
+
+            final long retryAfterMillis = RetryPolicy.retryAfterMillis(failure);
+            if (!idempotent || !retryPolicy.shouldRetry(attempt, retryAfterMillis)) {
+                throw giveUp(request, failure, attempt, retryAfterMillis);
+            }
+            try {
+                Thread.sleep(retryPolicy.delayMillis(attempt, retryAfterMillis));
+                // The SDK marks the start of the body before the first attempt
+                if (request.getContent() != null) {
+                    request.getContent().reset();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw giveUp(request, failure, attempt, retryAfterMillis);
+            } catch (IOException e) {
+                throw giveUp(request, failure, attempt, retryAfterMillis);
+            }
+        }
+    }
+
+    private ElasticSearchException giveUp(final Request request, final SdkClientException failure, final int attempts,
+                                          final long retryAfterMillis) {
+        final String operation = ElasticSearchMetrics.operation(request);
+        LOGGER.warn("ElasticSearch {} request failed after {} attempt(s): {}", operation, attempts, failure.getMessage());
+        if (failure instanceof AmazonServiceException && ((AmazonServiceException) failure).getStatusCode() == 429) {
+            return new ThrottledException("ElasticSearch is throttling " + operation + " requests", retryAfterMillis, failure);
+        }
+        return new ClusterUnavailableException("ElasticSearch is unavailable for " + operation + " requests",
+                retryAfterMillis, failure);
+    }
+
+    /**
+     * Submit the Request to AWS, and record its time, status, sizes and the time ElasticSearch reports it took
+     *
+     * @param request The Request
+     * @param streaming Leave the body unread, to be read from the response
+     * @return AwsResponse
+     */
+    private AwsResponse send(final Request request, final boolean streaming) {
+        final String operation = ElasticSearchMetrics.operation(request);
+        final String contentLength = (String) request.getHeaders().get("Content-Length");
+        elasticSearchMetrics.recordRequestSize(operation, contentLength != null ? Long.parseLong(contentLength) : 0);
+
+        final long started = System.nanoTime();
+        int status = 0;
+        try {
+            final ExecutionContext context = new ExecutionContext(true);
+            final AwsResponse response = streaming
+                    ? elasticSearchClientHandler.executeStreaming(context, request)
+                    : elasticSearchClientHandler.execute(context, request);
+            status = response.getHttpResponse().getStatusCode();
+            if (streaming) {
+                response.onContentClosed(bytes -> elasticSearchMetrics.recordResponseSize(operation, bytes));
+            } else {
+                elasticSearchMetrics.recordResponseSize(operation, response.getContentLength());
+                elasticSearchMetrics.recordTook(operation, response.getBody());
+            }
+            return response;
+        } catch (AmazonServiceException e) {
+            status = e.getStatusCode();
+            throw e;
+        } finally {
+            elasticSearchMetrics.recordRequest(operation, status, System.nanoTime() - started);
+        }
+    }
+
     /**
      * Create a new document in ElasticSearch with a given Index, Document Mapping, Document Body, and Document ID
      *
@@ -123,7 +386,12 @@ public class ElasticSearchService {
         final String url = index + "/" + type + "/" + id;
         final Request request = generateSignedRequest(url, json, null, HttpMethodName.PUT);
 
-        return executeRequest(request);
+        try {
+            return executeRequest(request);
+        } finally {
+            // A request that failed may still have been applied
+            searchResultCache.invalidate(index);
+        }
     }
 
     /**
@@ -134,12 +402,18 @@ public class ElasticSearchService {
      * @param id The ID of the document to be deleted
      * @return AwsResponse
      */
+    @Timed(value = "elasticsearch.service", histogram = true)
     public AwsResponse deleteDocument(final String index, final String type, final String id){
         final String url = index + "/" + type + "/" + id;
         // JSON and URL Parameters are not needed when deleting documents from ElasticSearch
         final Request request = generateSignedRequest(url, null, null, HttpMethodName.DELETE);
 
-        return executeRequest(request);
+        try {
+            return executeRequest(request);
+        } finally {
+            // A request that failed may still have been applied
+            searchResultCache.invalidate(index);
+        }
     }
 
     /**
@@ -149,6 +423,7 @@ public class ElasticSearchService {
      * @return The response string
      * @throws JsonProcessingException Throws JsonProcessingException when response cannot be parsed
      */
+    @Timed(value = "elasticsearch.service", histogram = true)
     public String createNewMovie(Movie movie) throws JsonProcessingException {
         final ObjectMapper objectMapper = new ObjectMapper();
         final String json = objectMapper.writeValueAsString(movie);
@@ -169,221 +444,770 @@ public class ElasticSearchService {
     }
 
     /**
-     * Update the Movie in ElasticSearch
+     * Index a collection of Movies through the ElasticSearch _bulk API
+     *
+     * @param movies The Movies
+     * @return The result of every Movie, in the order given
+     */
+    @Timed(value = "elasticsearch.service", histogram = true)
+    public BulkResult bulkIndex(final Collection<Movie> movies) {
+        final List<BulkOperation> operations = new ArrayList<>(movies.size());
+        for (Movie movie : movies) {
+            operations.add(BulkOperation.index(movie));
+        }
+        return bulk(operations);
+    }
+
+    /**
+     * Send the operations to the ElasticSearch _bulk API. The operations are written as NDJSON into chunks, limited by
+     * byte size and document count, and the chunks are sent concurrently on the bulk executor. Only a bounded number
+     * of chunks is held in memory at any time.
+     *
+     * @param operations The bulk operations
+     * @return The result of every operation, in the order given
+     */
+    @Timed(value = "elasticsearch.service", histogram = true)
+    public BulkResult bulk(final List<BulkOperation> operations) {
+        return bulk(operations, false);
+    }
+
+    /**
+     * Send the operations to the ElasticSearch _bulk API, like bulk(operations)
+     *
+     * @param operations The bulk operations
+     * @param ordered When true the chunks are sent one after another, so that writes of the same document in different
+     *                chunks are applied in the order given. Chunks sent at the same time can be applied in any order.
+     * @return The result of every operation, in the order given
+     */
+    @Timed(value = "elasticsearch.service", histogram = true)
+    public BulkResult bulk(final List<BulkOperation> operations, final boolean ordered) {
+        final ConfigurationInfo.Bulk limits = configurationInfo.getBulk();
+        final BulkItemResult[] results = new BulkItemResult[operations.size()];
+        final Semaphore inFlight = new Semaphore(ordered ? 1 : limits.getConcurrency());
+        final List<CompletableFuture<Void>> sent = new ArrayList<>();
+
+        final ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+        List<Integer> positions = new ArrayList<>();
+        for (int i = 0; i < operations.size(); i++) {
+            final BulkOperation operation = operations.get(i);
+            final byte[] entry;
+            try {
+                entry = writeBulkEntry(operation);
+            } catch (IllegalArgumentException | JsonProcessingException e) {
+                results[i] = new BulkItemResult(operation.getId(), HttpStatus.BAD_REQUEST.value(), e.getMessage());
+                continue;
+            }
+            if (!positions.isEmpty() && (chunk.size() + entry.length > limits.getMaxBytes()
+                    || positions.size() >= limits.getMaxDocuments())) {
+                sent.add(sendBulkChunk(chunk.toByteArray(), positions, operations, results, inFlight));
+                chunk.reset();
+                positions = new ArrayList<>();
+            }
+            chunk.write(entry, 0, entry.length);
+            positions.add(i);
+        }
+        if (!positions.isEmpty()) {
+            sent.add(sendBulkChunk(chunk.toByteArray(), positions, operations, results, inFlight));
+        }
+
+        CompletableFuture.allOf(sent.toArray(new CompletableFuture[0])).join();
+        if (!sent.isEmpty()) {
+            searchResultCache.invalidate(ElasticSearchConstants.MOVIES_INDEX);
+        }
+        return new BulkResult(Arrays.asList(results));
+    }
+
+    /**
+     * Write the action line and the source line of a single bulk operation
+     *
+     * @param operation The bulk operation
+     * @return The NDJSON entry
+     * @throws JsonProcessingException Throws JsonProcessingException when the Movie cannot be serialized
+     */
+    private byte[] writeBulkEntry(final BulkOperation operation) throws JsonProcessingException {
+        if (operation.getId() == null) {
+            throw new IllegalArgumentException("A Movie id is required for bulk indexing");
+        }
+        final String actionName = operation.getType() == BulkOperation.Type.UPDATE ? "update" : "index";
+        final String action = "{\"" + actionName + "\":{\"_index\":\"" + ElasticSearchConstants.MOVIES_INDEX
+                + "\",\"_type\":\"" + ElasticSearchConstants.MOVIES_DOCUMENT_TYPE
+                + "\",\"_id\":\"" + operation.getId() + "\"}}\n";
+        final byte[] actionLine = action.getBytes(StandardCharsets.UTF_8);
+        // Updates wrap the Movie in a partial 'doc' without an upsert, so updating a missing document fails with a 404
+        final byte[] source = operation.getType() == BulkOperation.Type.UPDATE
+                ? OBJECT_MAPPER.writeValueAsBytes(Collections.singletonMap("doc", operation.getMovie()))
+                : OBJECT_MAPPER.writeValueAsBytes(operation.getMovie());
+
+        final byte[] entry = new byte[actionLine.length + source.length + 1];
+        System.arraycopy(actionLine, 0, entry, 0, actionLine.length);
+        System.arraycopy(source, 0, entry, actionLine.length, source.length);
+        entry[entry.length - 1] = '\n';
+        return entry;
+    }
+
+    /**
+     * Send one chunk of a bulk request, once fewer than the configured number of chunks are in flight
+     *
+     * @param body The NDJSON chunk
+     * @param positions The positions of the chunk's operations in the full list of operations
+     * @param operations The full list of operations
+     * @param results The results of the full list of operations
+     * @param inFlight The permits for chunks in flight
+     * @return Completes when the results of the chunk are recorded
+     */
+    private CompletableFuture<Void> sendBulkChunk(final byte[] body, final List<Integer> positions,
+                                                  final List<BulkOperation> operations,
+                                                  final BulkItemResult[] results, final Semaphore inFlight) {
+        inFlight.acquireUninterruptibly();
+        return CompletableFuture.runAsync(() -> {
+            try {
+                final Map<String, List<String>> parameters = new HashMap<>();
+                parameters.put(ElasticSearchConstants.FILTER_PATH, Collections.singletonList(ElasticSearchConstants.BULK_FILTER));
+                final Request request = generateSignedRequest(ElasticSearchConstants.BULK_API, body,
+                        ElasticSearchConstants.NDJSON_CONTENT_TYPE, parameters, HttpMethodName.POST);
+
+                readBulkResponse(executeRequest(request), positions, operations, results);
+            } catch (ElasticSearchException e) {
+                failBulkChunk(positions, operations, results, status(e), e.getMessage());
+            } catch (Exception e) {
+                LOGGER.error("Failed to send bulk request.", e);
+                failBulkChunk(positions, operations, results);
+            }
+        }, bulkExecutor).whenComplete((ignored, error) -> inFlight.release());
+    }
+
+    /**
+     * Record the per item results of a bulk response. Items are returned by ElasticSearch in request order.
+     *
+     * @param response The bulk response
+     * @param positions The positions of the chunk's operations in the full list of operations
+     * @param operations The full list of operations
+     * @param results The results of the full list of operations
+     * @throws IOException Throws IOException when the response cannot be parsed
+     */
+    private void readBulkResponse(final AwsResponse response, final List<Integer> positions,
+                                  final List<BulkOperation> operations, final BulkItemResult[] results) throws IOException {
+        if (response == null) {
+            failBulkChunk(positions, operations, results);
+            return;
+        }
+        final JsonNode items = OBJECT_MAPPER.readTree(response.getBody()).path("items");
+        for (int i = 0; i < positions.size(); i++) {
+            final int position = positions.get(i);
+            final JsonNode item = items.path(i).elements().hasNext() ? items.path(i).elements().next() : null;
+            if (item == null) {
+                results[position] = new BulkItemResult(operations.get(position).getId(),
+                        HttpStatus.BAD_GATEWAY.value(), "Missing from the bulk response");
+                continue;
+            }
+            final JsonNode error = item.path("error");
+            results[position] = new BulkItemResult(item.path("_id").asText(operations.get(position).getId()),
+                    item.path("status").asInt(),
+                    error.isMissingNode() ? null : error.path("type").asText() + ": " + error.path("reason").asText());
+        }
+    }
+
+    /**
+     * Mark every operation of a chunk as failed, when the bulk request itself failed
+     *
+     * @param positions The positions of the chunk's operations in the full list of operations
+     * @param operations The full list of operations
+     * @param results The results of the full list of operations
+     */
+    private void failBulkChunk(final List<Integer> positions, final List<BulkOperation> operations,
+                               final BulkItemResult[] results) {
+        failBulkChunk(positions, operations, results, HttpStatus.BAD_GATEWAY.value(), "Bulk request to ElasticSearch failed");
+    }
+
+    private void failBulkChunk(final List<Integer> positions, final List<BulkOperation> operations,
+                               final BulkItemResult[] results, final int status, final String error) {
+        for (int position : positions) {
+            results[position] = new BulkItemResult(operations.get(position).getId(), status, error);
+        }
+    }
+
+    /**
+     * @param e The failure
+     * @return The status to report for the failure: 429 when throttled, 503 when the circuit is open, 502 otherwise
+     */
+    private static int status(final ElasticSearchException e) {
+        if (e instanceof ThrottledException) {
+            return HttpStatus.TOO_MANY_REQUESTS.value();
+        }
+        if (e instanceof CircuitOpenException) {
+            return HttpStatus.SERVICE_UNAVAILABLE.value();
+        }
+        return HttpStatus.BAD_GATEWAY.value();
+    }
+
+    /**
+     * Update the Movie in ElasticSearch with a single conditional write. The Movie is sent as a partial 'doc' to the
+     * _update API without an upsert, so a missing document is never created, and ElasticSearch rejects the write when
+     * the document changed while it was being updated. Every field of the Movie is sent, so the stored Movie is
+     * fully replaced.
      *
      * @param movie The Movie
      * @param id The ID of the Movie
      * @return The response string
      * @throws JsonProcessingException Throws JsonProcessingException when response cannot be parsed
+     * @throws IdNotFoundException Throws IdNotFoundException when there is no Movie with the ID
+     * @throws VersionConflictException Throws VersionConflictException when the Movie was changed concurrently
      */
-    public String updateMovie(final Long id, Movie movie) throws JsonProcessingException, IdNotFoundException {
-        final MovieQuery movieQuery = new MovieQuery();
-        movieQuery.setId(id);
+    @Timed(value = "elasticsearch.service", histogram = true)
+    public String updateMovie(final Long id, Movie movie) throws JsonProcessingException, IdNotFoundException,
+            VersionConflictException {
+        if (movie.getId() == null) {
+            movie.setId(id);
+        } else if (!movie.getId().equals(id)) {
+            throw new IllegalArgumentException("The Movie id " + movie.getId() + " does not match the id " + id);
+        }
 
-        //Search ElasticSearch to make sure that the given ID is valid
-        final String movieToUpdate = getMovies(ElasticSearchConstants.MOVIES_INDEX, 0, 100, null, movieQuery);
-        if (movieToUpdate == null || movieToUpdate.equals(ElasticSearchConstants.EMPTY_RESPONSE)){
-            throw new IdNotFoundException("Failed to find movie to update with id of " + id);
+        final byte[] body = OBJECT_MAPPER.writeValueAsBytes(Collections.singletonMap("doc", movie));
+        if (executeUpdate(id, body)) {
+            LOGGER.info("Successfully updated movie with ID: {} and title: {}", movie.getId(), movie.getTitle());
+            return movie.getTitle();
         }
+        return null;
+    }
 
-        //If the ID does exist, then overwrite the existing object with the object provided in the update request
-        final ObjectMapper objectMapper = new ObjectMapper();
-        final String json = objectMapper.writeValueAsString(movie);
-        if (json != null) {
-            AwsResponse response = createDocument(ElasticSearchConstants.MOVIES_INDEX,
-                    ElasticSearchConstants.MOVIES_DOCUMENT_TYPE,
-                    json,
-                    movie.getId().toString());
-            if (response != null && response.getHttpResponse().getStatusCode() == HttpStatus.OK.value()) {
-                LOGGER.info("Successfully created new movie with ID: {} and title: {}", movie.getId(), movie.getTitle());
-                return movie.getTitle();
+    /**
+     * Change only some fields of the Movie in ElasticSearch. A patch that only sets fields is sent as a partial 'doc'.
+     * A patch that adds to or removes from set-valued fields is applied by a painless script. The script is stored in
+     * ElasticSearch with the first such patch, so later patches only send its id and their params.
+     *
+     * @param id The ID of the Movie
+     * @param patch The changes
+     * @return True when the Movie was patched
+     * @throws JsonProcessingException Throws JsonProcessingException when the patch cannot be serialized
+     * @throws IdNotFoundException Throws IdNotFoundException when there is no Movie with the ID
+     * @throws VersionConflictException Throws VersionConflictException when the Movie was changed concurrently
+     */
+    @Timed(value = "elasticsearch.service", histogram = true)
+    public boolean patchMovie(final Long id, final MoviePatch patch) throws JsonProcessingException, IdNotFoundException,
+            VersionConflictException {
+        if (patch == null || patch.isEmpty()) {
+            throw new IllegalArgumentException("The patch has no changes");
+        }
+        final Map<String, Object> doc = normalizePatchDoc(patch.getDoc());
+
+        final Map<String, Object> body = new HashMap<>();
+        if (patch.isDocOnly()) {
+            body.put("doc", doc);
+        } else {
+            final Map<String, Object> params = new HashMap<>();
+            params.put("doc", doc);
+            params.put("add", normalizePatchValues(patch.getAdd()));
+            params.put("remove", normalizePatchValues(patch.getRemove()));
+
+            final Map<String, Object> script = new HashMap<>();
+            if (storeMoviePatchScript()) {
+                script.put("id", moviePatchScriptId);
+            } else {
+                script.put("source", moviePatchScript);
+                script.put("lang", "painless");
             }
+            script.put("params", params);
+            body.put("script", script);
         }
 
-        return null;
+        final boolean patched = executeUpdate(id, OBJECT_MAPPER.writeValueAsBytes(body));
+        if (patched) {
+            LOGGER.info("Successfully patched movie with ID: {}", id);
+        }
+        return patched;
     }
 
     /**
-     * Generate the request from the API criteria, and return the results from ElasticSearch
+     * Store the movie patch script in ElasticSearch, once. The id of the stored script includes a hash of its source, so
+     * a changed script never replaces the one used by an older version of the application.
      *
-     * @param from Beginning point of the query
-     * @param size Number of objects to return in the query
-     * @param filterValues Optional list of values to filter the response by
-     * @return Response
+     * @return True when the script is stored, false when it must be sent with each patch
      */
-    public String getMovies(final String index, final int from, final int size, Set<String> filterValues, final MovieQuery movieQuery) {
-        JSONObject query = new JSONObject();
-        JSONObject bool = new JSONObject();
-        JSONObject must = new JSONObject();
-        JSONArray array = new JSONArray();
+    private boolean storeMoviePatchScript() {
+        if (moviePatchScriptStored) {
+            return true;
+        }
+        synchronized (this) {
+            if (!moviePatchScriptStored) {
+                final JSONObject body = new JSONObject().put("script",
+                        new JSONObject().put("lang", "painless").put("source", moviePatchScript));
+                final AwsResponse response = executeRequest(generateSignedRequest(
+                        ElasticSearchConstants.SCRIPTS_API + moviePatchScriptId, body.toString(), null, HttpMethodName.PUT));
+                moviePatchScriptStored = response != null;
+            }
+            return moviePatchScriptStored;
+        }
+    }
 
-        createMovieQuery(movieQuery, array);
+    /**
+     * Check the fields to set against the Movie, and write their values the same way a whole Movie is written
+     *
+     * @param doc The fields to set, may be null
+     * @return The fields to set
+     */
+    private Map<String, Object> normalizePatchDoc(final Map<String, Object> doc) {
+        if (doc == null || doc.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        if (doc.containsKey("id")) {
+            throw new IllegalArgumentException("The id of a Movie cannot be patched");
+        }
+        final Map<String, Object> written = OBJECT_MAPPER.convertValue(OBJECT_MAPPER.convertValue(doc, Movie.class),
+                MAP_TYPE);
+        written.keySet().retainAll(doc.keySet());
+        return written;
+    }
 
-        query.put("from", from);
-        query.put("size", size);
-        must.put("must", array);
-        bool.put("bool", must);
-        query.put("query", bool);
-        if (filterValues != null) {
-            query.put("_source", filterValues);
+    /**
+     * Check the values added to or removed from each set-valued field against the Movie, and write them the same way
+     * a whole Movie is written
+     *
+     * @param values The values of each set-valued field, may be null
+     * @return The values of each set-valued field
+     */
+    private Map<String, Object> normalizePatchValues(final Map<String, List<Object>> values) {
+        if (values == null || values.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        for (String field : values.keySet()) {
+            if (!MoviePatch.SET_FIELDS.contains(field)) {
+                throw new IllegalArgumentException("Values can only be added to or removed from " + MoviePatch.SET_FIELDS
+                        + ", not " + field);
+            }
         }
+        final Map<String, Object> written = OBJECT_MAPPER.convertValue(OBJECT_MAPPER.convertValue(values, Movie.class),
+                MAP_TYPE);
+        written.keySet().retainAll(values.keySet());
+        return written;
+    }
 
+    /**
+     * Send a body to the _update API of the Movie. The update fails instead of creating a missing Movie, and fails
+     * when the Movie is changed by another write while it is being updated.
+     *
+     * @param id The ID of the Movie
+     * @param body The _update request body
+     * @return True when the update succeeded
+     * @throws IdNotFoundException Throws IdNotFoundException when there is no Movie with the ID
+     * @throws VersionConflictException Throws VersionConflictException when the Movie was changed concurrently
+     */
+    private boolean executeUpdate(final Long id, final byte[] body) throws IdNotFoundException, VersionConflictException {
         final Map<String, List<String>> parameters = new HashMap<>();
-        parameters.put(ElasticSearchConstants.FILTER_PATH, Collections.singletonList(ElasticSearchConstants.FILTER));
+        parameters.put(ElasticSearchConstants.FILTER_PATH, Collections.singletonList(ElasticSearchConstants.UPDATE_FILTER));
+        final String url = ElasticSearchConstants.MOVIES_INDEX + "/" + ElasticSearchConstants.MOVIES_DOCUMENT_TYPE + "/"
+                + id + ElasticSearchConstants.UPDATE_API;
+        final Request request = generateSignedRequest(url, body, ElasticSearchConstants.JSON_CONTENT_TYPE, parameters,
+                HttpMethodName.POST);
 
-        final String url = index + ElasticSearchConstants.SEARCH_API;
-        LOGGER.info("ES Query Body: {}", query);
-        final Request request = generateSignedRequest(url, query.toString(), parameters, HttpMethodName.GET);
-
-        final AwsResponse response = executeRequest(request);
+        try {
+            call(request, false);
+            return true;
+        } catch (ElasticSearchException e) {
+            throw e;
+        } catch (AmazonServiceException e) {
+            if (e.getStatusCode() == HttpStatus.NOT_FOUND.value()) {
+                throw new IdNotFoundException("Failed to find movie to update with id of " + id);
+            }
+            if (e.getStatusCode() == HttpStatus.CONFLICT.value()) {
+                throw new VersionConflictException("Movie with id of " + id + " was changed by another update, try again");
+            }
+            LOGGER.error("Error executing ElasticSearch Request.", e);
+        } catch (Exception e) {
+            LOGGER.error("Error executing ElasticSearch Request.", e);
+        } finally {
+            searchResultCache.invalidate(ElasticSearchConstants.MOVIES_INDEX);
+        }
 
-        return response != null ? response.getBody() : "";
+        return false;
     }
 
     /**
-     * Build a fuzzy search ElasticSearch query
+     * Generate the request from the API criteria, and return the results from ElasticSearch, or from the result cache
+     * when the same search was made recently
      *
      * @param from Beginning point of the query
      * @param size Number of objects to return in the query
-     * @param filterValues Optional list of values to filter the response by
+     * @param sourceFilter Optional fields to include in and exclude from the response
      * @return Response
      */
-    public String getMoviesFuzzySearch(final String index, final int from, final int size, Set<String> filterValues, final MovieQuery movieQuery) {
-        JSONObject query = new JSONObject();
-        JSONObject fuzzy = new JSONObject();
-        JSONObject searchTerm = new JSONObject();
-
-        createMovieQueryFuzzySearch(movieQuery, searchTerm);
-
-        query.put("from", from);
-        query.put("size", size);
-        fuzzy.put("fuzzy", searchTerm);
-        query.put("query", fuzzy);
-        if (filterValues != null) {
-            query.put("_source", filterValues);
+    @Timed(value = "elasticsearch.service", histogram = true)
+    public String getMovies(final String index, final int from, final int size, final SourceFilter sourceFilter, final MovieQuery movieQuery) {
+        final SearchResultCache.Key key = searchResultCache.key(SearchResultCache.SearchType.MATCH, index, from, size,
+                sourceFilter, movieQuery);
+        final byte[] cached = searchResultCache.get(key);
+        if (cached != null) {
+            return new String(cached, StandardCharsets.UTF_8);
         }
 
-        final Map<String, List<String>> parameters = new HashMap<>();
-        parameters.put(ElasticSearchConstants.FILTER_PATH, Collections.singletonList(ElasticSearchConstants.FILTER));
+        final byte[] query = SearchBodyWriter.match(movieQuery, keywordFields.get()).source(sourceFilter).from(from).size(size).toBytes();
 
-        final String url = index + ElasticSearchConstants.SEARCH_API;
-        LOGGER.info("ES Query Body: {}", query);
-        final Request request = generateSignedRequest(url, query.toString(), parameters, HttpMethodName.GET);
+        return cacheSearch(key, index, query);
+    }
 
-        final AwsResponse response = executeRequest(request);
+    /**
+     * Generate the request for one page of results from the API criteria, and return the unread response from
+     * ElasticSearch so that it can be streamed to the caller. Pages are read with search_after, so deep pages cost the
+     * cluster no more than the first. The response must be closed to release the connection.
+     *
+     * @param size Number of objects to return in the page, capped at the configured maximum page size
+     * @param cursor The position of the page, or null for the first page
+     * @param sourceFilter Optional fields to include in and exclude from the response
+     * @return Streaming response, or null when the request failed
+     */
+    @Timed(value = "elasticsearch.service", histogram = true)
+    public AwsResponse streamMovies(final String index, final int size, final SearchCursor cursor, final SourceFilter sourceFilter, final MovieQuery movieQuery) {
+        final SearchBodyWriter query = SearchBodyWriter.match(movieQuery, keywordFields.get()).source(sourceFilter);
 
-        return response != null ? response.getBody() : "";
+        return streamPage(index, query, size, cursor);
     }
 
     /**
-     * Build a query statement from the MovieQuery object
+     * Build a fuzzy search ElasticSearch query
      *
-     * @param movieQuery The MovieQuery
-     * @param array The JSONArray
+     * @param from Beginning point of the query
+     * @param size Number of objects to return in the query
+     * @param sourceFilter Optional fields to include in and exclude from the response
+     * @return Response
      */
-    private void createMovieQuery(final MovieQuery movieQuery, JSONArray array) {
-        if(movieQuery.getId() != null){
-            buildElasticSearchMatchStatement("id", movieQuery.getId(), array);
+    @Timed(value = "elasticsearch.service", histogram = true)
+    public String getMoviesFuzzySearch(final String index, final int from, final int size, final SourceFilter sourceFilter, final MovieQuery movieQuery) {
+        final SearchResultCache.Key key = searchResultCache.key(SearchResultCache.SearchType.FUZZY, index, from, size,
+                sourceFilter, movieQuery);
+        final byte[] cached = searchResultCache.get(key);
+        if (cached != null) {
+            return new String(cached, StandardCharsets.UTF_8);
         }
-        if(StringUtils.checkNullOrEmpty(movieQuery.getTitle())){
-            buildElasticSearchMatchStatement("title", movieQuery.getTitle(), array);
+
+        final byte[] query = SearchBodyWriter.fuzzy(movieQuery).source(sourceFilter).from(from).size(size).toBytes();
+
+        return cacheSearch(key, index, query);
+    }
+
+    /**
+     * Run many searches with a single call to the ElasticSearch _msearch API. Each search succeeds or fails on its own,
+     * so one bad search never fails the others.
+     *
+     * @param index The index to search
+     * @param queries The searches
+     * @return The result of every search, in the order given
+     */
+    @Timed(value = "elasticsearch.service", histogram = true)
+    public MultiSearchResult multiSearch(final String index, final List<MultiSearchQuery> queries) {
+        final ConfigurationInfo.Search settings = configurationInfo.getSearch();
+        if (queries.size() > settings.getMaxMultiSearchQueries()) {
+            throw new IllegalArgumentException("At most " + settings.getMaxMultiSearchQueries()
+                    + " searches can be sent together");
         }
-        if(movieQuery.getYear() > 0){
-            buildElasticSearchMatchStatement("year", movieQuery.getYear(), array);
+        final MultiSearchItemResult[] results = new MultiSearchItemResult[queries.size()];
+        final List<Integer> positions = new ArrayList<>();
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (int i = 0; i < queries.size(); i++) {
+            final MultiSearchQuery query = queries.get(i);
+            if (query == null || query.getQuery() == null) {
+                results[i] = new MultiSearchItemResult(HttpStatus.BAD_REQUEST.value(), null, "A query is required");
+                continue;
+            }
+            final int size = query.getSize() != null
+                    ? Math.max(0, Math.min(query.getSize(), settings.getMaxPageSize()))
+                    : settings.getDefaultPageSize();
+            final SearchBodyWriter writer = query.isFuzzy()
+                    ? SearchBodyWriter.fuzzy(query.getQuery())
+                    : SearchBodyWriter.match(query.getQuery(), keywordFields.get());
+            final byte[] search = writer.source(query.getFields()).from(Math.max(0, query.getFrom())).size(size).toBytes();
+
+            // The index is part of the URL, so every search has an empty header line
+            body.write('{');
+            body.write('}');
+            body.write('\n');
+            body.write(search, 0, search.length);
+            body.write('\n');
+            positions.add(i);
         }
-        if(movieQuery.getGenre() != null){
-            buildElasticSearchShouldStatement("genre", movieQuery.getGenre(), array);
+
+        if (!positions.isEmpty()) {
+            final Map<String, List<String>> parameters = new HashMap<>();
+            parameters.put(ElasticSearchConstants.FILTER_PATH, Collections.singletonList(ElasticSearchConstants.MULTI_SEARCH_FILTER));
+            final byte[] searches = body.toByteArray();
+            try {
+                final AwsResponse response = endpointRouter.read(target -> executeRequest(generateSignedRequest(target,
+                        index + "/" + ElasticSearchConstants.MULTI_SEARCH_API, searches,
+                        ElasticSearchConstants.NDJSON_CONTENT_TYPE, parameters, HttpMethodName.GET)));
+                readMultiSearchResponse(response, positions, results);
+            } catch (ElasticSearchException e) {
+                throw e;
+            } catch (Exception e) {
+                LOGGER.error("Failed to read multi search response.", e);
+                for (int position : positions) {
+                    results[position] = new MultiSearchItemResult(HttpStatus.BAD_GATEWAY.value(), null,
+                            "Unreadable multi search response");
+                }
+            }
         }
-        if(StringUtils.checkNullOrEmpty(movieQuery.getMpaaRating())){
-            buildElasticSearchMatchStatement("mpaaRating", movieQuery.getMpaaRating(), array);
+        return new MultiSearchResult(Arrays.asList(results));
+    }
+
+    /**
+     * Record the result of every search of a multi search response. Responses are returned by ElasticSearch in request
+     * order.
+     *
+     * @param response The multi search response
+     * @param positions The positions of the sent searches in the full list of searches
+     * @param results The results of the full list of searches
+     * @throws IOException Throws IOException when the response cannot be parsed
+     */
+    private void readMultiSearchResponse(final AwsResponse response, final List<Integer> positions,
+                                         final MultiSearchItemResult[] results) throws IOException {
+        final JsonNode responses = response != null ? OBJECT_MAPPER.readTree(response.getBody()).path("responses") : null;
+        for (int i = 0; i < positions.size(); i++) {
+            final JsonNode item = responses != null ? responses.path(i) : null;
+            if (item == null || item.isMissingNode()) {
+                results[positions.get(i)] = new MultiSearchItemResult(HttpStatus.BAD_GATEWAY.value(), null,
+                        response == null ? "Multi search request failed" : "Missing from the multi search response");
+                continue;
+            }
+            final JsonNode error = item.path("error");
+            if (!error.isMissingNode()) {
+                results[positions.get(i)] = new MultiSearchItemResult(
+                        item.path("status").asInt(HttpStatus.INTERNAL_SERVER_ERROR.value()), null,
+                        error.path("type").asText() + ": " + error.path("reason").asText());
+                continue;
+            }
+            final List<JsonNode> movies = new ArrayList<>();
+            for (JsonNode hit : item.path("hits").path("hits")) {
+                movies.add(hit.path("_source"));
+            }
+            results[positions.get(i)] = new MultiSearchItemResult(item.path("status").asInt(HttpStatus.OK.value()),
+                    movies, null);
         }
-        if(StringUtils.checkNullOrEmpty(movieQuery.getImdbUrl())){
-            buildElasticSearchMatchStatement("imdbUrl", movieQuery.getImdbUrl(), array);
+    }
+
+    /**
+     * Count the Movies that match the query by each of the requested facets, with a single size 0 search, so no Movie
+     * is read. Counts are answered from the facet cache when the same facets were counted for the same query recently.
+     *
+     * @param index The index to search
+     * @param facetQuery The query, and the facets to count
+     * @return The number of matching Movies and the buckets of every facet, or null when the request failed
+     * @throws FacetUnavailableException When a facet's keyword field is not mapped in the index yet
+     */
+    @Timed(value = "elasticsearch.service", histogram = true)
+    public FacetResult getFacets(final String index, final FacetQuery facetQuery) {
+        if (facetQuery.getFacets() == null || facetQuery.getFacets().isEmpty()) {
+            throw new IllegalArgumentException("At least one facet is required");
         }
-        if(StringUtils.checkNullOrEmpty(movieQuery.getLanguage())){
-            buildElasticSearchMatchStatement("language", movieQuery.getLanguage(), array);
+        final MovieQuery movieQuery = facetQuery.getQuery() != null ? facetQuery.getQuery() : new MovieQuery();
+        // In a fixed order, so the buckets of the response are in the same order for every request
+        final Set<Facet> facets = EnumSet.copyOf(facetQuery.getFacets());
+        // ElasticSearch fails the whole search when a terms aggregation is run on a text field
+        for (Facet facet : facets) {
+            if (facet.isKeyword() && !keywordFields.contains(facet.getField())) {
+                throw new FacetUnavailableException("The " + facet.getName() + " facet needs the " + facet.getField()
+                        + " keyword field, which the " + index + " index does not have yet. Start the application with"
+                        + " aws.index.mode set to APPLY or REINDEX to update the index.");
+            }
         }
-        if(StringUtils.checkNullOrEmpty(movieQuery.getCountry())){
-            buildElasticSearchMatchStatement("country", movieQuery.getCountry(), array);
+        final SearchResultCache.Key key = searchResultCache.facetKey(index, facets, movieQuery);
+        final FacetResult cached = facetCache.get(key);
+        if (cached != null) {
+            return cached;
         }
-        if(StringUtils.checkNullOrEmpty(movieQuery.getStoryline())){
-            buildElasticSearchMatchStatement("storyline", movieQuery.getStoryline(), array);
+
+        final ConfigurationInfo.Facets settings = configurationInfo.getFacets();
+        final byte[] query = SearchBodyWriter.match(movieQuery, keywordFields.get()).size(0)
+                .aggregations(facets, settings.getMaxTerms(), settings.getStarRatingRanges()).toBytes();
+        logQuery(query);
+        final Map<String, List<String>> parameters = new HashMap<>();
+        parameters.put(ElasticSearchConstants.FILTER_PATH, Collections.singletonList(ElasticSearchConstants.FACETS_FILTER));
+        try {
+            final AwsResponse response = endpointRouter.read(target -> executeRequest(generateSignedRequest(target,
+                    index + ElasticSearchConstants.SEARCH_API, query, ElasticSearchConstants.JSON_CONTENT_TYPE,
+                    parameters, HttpMethodName.GET)));
+            if (response == null) {
+                return null;
+            }
+            final FacetResult result = readFacets(OBJECT_MAPPER.readTree(response.getBody()), facets);
+            facetCache.put(key, result);
+            return result;
+        } catch (ElasticSearchException e) {
+            throw e;
+        } catch (Exception e) {
+            LOGGER.error("Failed to read facets response.", e);
+            return null;
         }
-        if(StringUtils.checkNullOrEmpty(movieQuery.getSynopsis())){
-            buildElasticSearchMatchStatement("synopsis", movieQuery.getSynopsis(), array);
+    }
+
+    /**
+     * Read the buckets of every facet from the aggregations of a search response
+     *
+     * @param response The search response
+     * @param facets The facets that were counted
+     * @return The facet counts
+     */
+    private static FacetResult readFacets(final JsonNode response, final Set<Facet> facets) {
+        // hits.total is a number before ES 7, and an object with the number as its value since
+        final JsonNode total = response.path("hits").path("total");
+        final Map<String, List<FacetBucket>> buckets = new LinkedHashMap<>();
+        for (Facet facet : facets) {
+            final List<FacetBucket> facetBuckets = new ArrayList<>();
+            for (JsonNode bucket : response.path("aggregations").path(facet.getName()).path("buckets")) {
+                final JsonNode key = bucket.path("key");
+                facetBuckets.add(new FacetBucket(
+                        facet == Facet.DECADE ? String.valueOf(key.asLong()) : key.asText(),
+                        bucket.path("doc_count").asLong(),
+                        bucket.has("from") ? bucket.get("from").asDouble() : null,
+                        bucket.has("to") ? bucket.get("to").asDouble() : null));
+            }
+            buckets.put(facet.getName(), facetBuckets);
         }
+        return new FacetResult(total.isObject() ? total.path("value").asLong() : total.asLong(), buckets);
     }
 
     /**
-     * Build an ElasticSearch fuzzy search statement.
+     * Run the search and cache its result. When an identical search is already in flight, its result is shared instead
+     * of sending another request.
      *
-     * @param movieQuery The MovieQuery
-     * @param searchTerm The term to search for
+     * @param key The normalized search
+     * @param index The index to search
+     * @param query The query
+     * @return Response
      */
-    private void createMovieQueryFuzzySearch(final MovieQuery movieQuery, JSONObject searchTerm) {
-        if(StringUtils.checkNullOrEmpty(movieQuery.getStoryline())){
-            buildElasticSearchFuzzyStatement("storyline", movieQuery.getStoryline(), searchTerm);
+    private String cacheSearch(final SearchResultCache.Key key, final String index, final byte[] query) {
+        final RequestCoalescer.Flight flight = requestCoalescer.begin(key);
+        if (!flight.isLeader()) {
+            final byte[] shared = flight.await();
+            if (shared != null) {
+                return new String(shared, StandardCharsets.UTF_8);
+            }
         }
-        if(StringUtils.checkNullOrEmpty(movieQuery.getSynopsis())){
-            buildElasticSearchFuzzyStatement("synopsis", movieQuery.getSynopsis(), searchTerm);
+
+        byte[] result = null;
+        try {
+            final long started = System.nanoTime();
+            final String body = search(index, query);
+            if (StringUtils.checkNullOrEmpty(body)) {
+                result = body.getBytes(StandardCharsets.UTF_8);
+                searchResultCache.put(key, result, started);
+            }
+            return body;
+        } finally {
+            flight.complete(result);
         }
+    }
 
+    /**
+     * Run the search against ElasticSearch
+     *
+     * @param index The index to search
+     * @param query The query
+     * @return Response, or an empty string when the request failed
+     */
+    private String search(final String index, final byte[] query) {
+        logQuery(query);
+        final AwsResponse response = endpointRouter.read(target -> executeRequest(generateSearchRequest(target, index, query)));
+
+        return response != null ? ElasticSearchMetrics.withoutTook(response.getBody()) : "";
     }
 
     /**
-     * Build an ElasticSearch 'should' statement.
+     * Build a fuzzy search ElasticSearch query for one page of results, and return the unread response from
+     * ElasticSearch so that it can be streamed to the caller. The response must be closed to release the connection.
      *
-     * @param field The field to search in
-     * @param value The value to search for
-     * @param array The JSONArray to append the the query to
+     * @param size Number of objects to return in the page, capped at the configured maximum page size
+     * @param cursor The position of the page, or null for the first page
+     * @param sourceFilter Optional fields to include in and exclude from the response
+     * @return Streaming response, or null when the request failed
      */
-    private void buildElasticSearchShouldStatement(final String field, final Collection value,
-                                                   final JSONArray array) {
-        if (value.size() > 1) {
-            final JSONObject bool = new JSONObject();
-            final JSONObject should = new JSONObject();
-            final JSONArray match = new JSONArray();
-            for (Object objectValue : value) {
-                buildElasticSearchMatchStatement(field, objectValue, match);
-            }
-            should.put("should", match);
-            bool.put("bool", should);
-            array.put(bool);
-        } else {
-            buildElasticSearchMatchStatement(field, value.iterator().next(), array);
-        }
+    @Timed(value = "elasticsearch.service", histogram = true)
+    public AwsResponse streamMoviesFuzzySearch(final String index, final int size, final SearchCursor cursor, final SourceFilter sourceFilter, final MovieQuery movieQuery) {
+        final SearchBodyWriter query = SearchBodyWriter.fuzzy(movieQuery).source(sourceFilter);
+
+        return streamPage(index, query, size, cursor);
+    }
+
+    /**
+     * Sign a search request for the query
+     *
+     * @param target The endpoint to search
+     * @param index The index to search
+     * @param query The UTF-8 encoded query
+     * @return The Request
+     */
+    private Request generateSearchRequest(final EndpointRouter.Target target, final String index, final byte[] query) {
+        final Map<String, List<String>> parameters = new HashMap<>();
+        parameters.put(ElasticSearchConstants.FILTER_PATH, Collections.singletonList(ElasticSearchConstants.FILTER));
+
+        final String url = index + ElasticSearchConstants.SEARCH_API;
+        return generateSignedRequest(target, url, query, ElasticSearchConstants.JSON_CONTENT_TYPE, parameters,
+                HttpMethodName.GET);
     }
 
     /**
-     * Build an ElasticSearch 'match' statement. This is equivalent to a SQL 'equals' statement.
+     * Search for one page of the query. Hits are sorted by score, with the document id as the tiebreaker so the order
+     * is stable between pages, and the page starts after the sort values in the cursor. When point in time is enabled,
+     * every page is read from the same point in time, opened on the primary with the first page, and so every page is
+     * read from the primary.
      *
-     * @param field The field to search in
-     * @param value The value to search for
-     * @param array The JSONArray to append the query to
+     * @param index The index to search
+     * @param query The query, which is finished here
+     * @param size Number of objects to return in the page
+     * @param cursor The position of the page, or null for the first page
+     * @return Streaming response, or null when the request failed
      */
-    private void buildElasticSearchMatchStatement(final String field, final Object value, final JSONArray array) {
-        final JSONObject matchItem = new JSONObject();
-        final JSONObject matchTerms = new JSONObject();
-        matchTerms.put(field, value);
-        matchItem.put("match", matchTerms);
-        array.put(matchItem);
+    private AwsResponse streamPage(final String index, final SearchBodyWriter query, final int size,
+                                   final SearchCursor cursor) {
+        final ConfigurationInfo.Search settings = configurationInfo.getSearch();
+        query.size(Math.max(1, Math.min(size, settings.getMaxPageSize()))).sortByScoreThenId();
+        if (cursor != null && cursor.getAfter() != null) {
+            query.searchAfter(cursor.getAfter());
+        }
+
+        String pit = null;
+        if (settings.isPointInTime()) {
+            pit = cursor != null && cursor.getPit() != null ? cursor.getPit() : openPointInTime(index);
+            if (pit != null) {
+                query.pointInTime(pit, settings.getPointInTimeKeepAlive());
+            }
+        }
+        // A point in time already names its indices, so the search must not
+        final String url = pit != null ? ElasticSearchConstants.SEARCH_API.substring(1) : index + ElasticSearchConstants.SEARCH_API;
+        final byte[] body = query.toBytes();
+
+        final Map<String, List<String>> parameters = new HashMap<>();
+        parameters.put(ElasticSearchConstants.FILTER_PATH, Collections.singletonList(ElasticSearchConstants.PAGED_FILTER));
+
+        logQuery(body);
+        if (pit != null) {
+            return executeStreamingRequest(generateSignedRequest(url, body, ElasticSearchConstants.JSON_CONTENT_TYPE,
+                    parameters, HttpMethodName.GET));
+        }
+        return endpointRouter.read(target -> executeStreamingRequest(generateSignedRequest(target, url, body,
+                ElasticSearchConstants.JSON_CONTENT_TYPE, parameters, HttpMethodName.GET)));
+    }
+
+    private void logQuery(final byte[] query) {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("ES Query Body: {}", new String(query, StandardCharsets.UTF_8));
+        }
     }
 
     /**
-     * Build a fuzzy search clause
+     * Open a point in time on the index, so that all pages of a search see the same data
      *
-     * @param field The field to search in
-     * @param value The partial value to search for
-     * @param searchTerm The JSONObject
+     * @param index The index
+     * @return The point in time id, or null when it could not be opened
      */
-    private void buildElasticSearchFuzzyStatement(final String field, final Object value, final JSONObject searchTerm) {
-        final JSONObject fuzzyBlock = new JSONObject();
-        fuzzyBlock.put("value", value);
-        fuzzyBlock.put("boost", 1.0);
-        fuzzyBlock.put("fuzziness", 50);
-        fuzzyBlock.put("prefix_length", 0);
-        fuzzyBlock.put("max_expansions", 100);
-        searchTerm.put(field, fuzzyBlock);
+    private String openPointInTime(final String index) {
+        final Map<String, List<String>> parameters = new HashMap<>();
+        parameters.put("keep_alive", Collections.singletonList(configurationInfo.getSearch().getPointInTimeKeepAlive()));
+        // An empty body keeps the parameters in the URL, the SDK would otherwise form encode them into a POST body
+        final Request request = generateSignedRequest(index + ElasticSearchConstants.PIT_API, "", parameters, HttpMethodName.POST);
+
+        final AwsResponse response = executeRequest(request);
+        if (response == null) {
+            LOGGER.warn("Unable to open a point in time on {}, paging without one.", index);
+            return null;
+        }
+        return new JSONObject(response.getBody()).optString("id", null);
     }
 
     /**
@@ -392,6 +1216,7 @@ public class ElasticSearchService {
      * @param index The Index
      * @return Response
      */
+    @Timed(value = "elasticsearch.service", histogram = true)
     public String getIndexStatistics(final String index) {
         final String url = index + ElasticSearchConstants.STATS_API;
 
@@ -0,0 +1,84 @@
+package com.labs1904.aws.elasticsearch.springboot.services;
+
+import com.labs1904.aws.elasticsearch.springboot.config.ConfigurationInfo;
+import com.labs1904.aws.elasticsearch.springboot.exceptions.EndpointBusyException;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Runs the work of an endpoint on the async executor, so the servlet thread is free while ElasticSearch answers.
+ *
+ * Every endpoint has its own limit on the calls running at once, so one slow endpoint cannot take the threads of the
+ * others. A call over the limit, or one the executor has no room for, fails straight away with EndpointBusyException.
+ * A call that takes longer than the timeout of its endpoint fails with TimeoutException. It keeps its place in the
+ * limit until ElasticSearch answers, since the call is still running.
+ */
+@Named
+public class EndpointExecutor {
+
+    private final ConfigurationInfo.Async settings;
+    private final ExecutorService executor;
+    private final Map<String, Semaphore> limits = new ConcurrentHashMap<>();
+
+    @Inject
+    public EndpointExecutor(final ConfigurationInfo configurationInfo,
+                            @Named("asyncExecutor") final ExecutorService executor) {
+        this.settings = configurationInfo.getAsync();
+        this.executor = executor;
+    }
+
+    /**
+     * Run the work of an endpoint. When async execution is disabled, the work runs on the calling thread.
+     *
+     * @param endpoint The name of the endpoint, as used in the aws.async.endpoints.* properties
+     * @param work The work
+     * @param <T> The type of the result
+     * @return The result
+     */
+    public <T> CompletableFuture<T> submit(final String endpoint, final Supplier<T> work) {
+        if (!settings.isEnabled()) {
+            return CompletableFuture.completedFuture(work.get());
+        }
+        final Semaphore limit = limits.computeIfAbsent(endpoint, name -> new Semaphore(settings.maxConcurrent(name)));
+        if (!limit.tryAcquire()) {
+            return busy("Too many " + endpoint + " calls in progress, try again later");
+        }
+
+        final CompletableFuture<T> running;
+        try {
+            running = CompletableFuture.supplyAsync(work, executor);
+        } catch (RejectedExecutionException e) {
+            limit.release();
+            return busy("No room to run the " + endpoint + " call, try again later");
+        }
+
+        // Time out the result handed to Spring, not the running call
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        running.whenComplete((value, error) -> {
+            limit.release();
+            if (error != null) {
+                result.completeExceptionally(error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error);
+            } else {
+                result.complete(value);
+            }
+        });
+        return result.orTimeout(settings.timeoutMillis(endpoint), TimeUnit.MILLISECONDS);
+    }
+
+    private static <T> CompletableFuture<T> busy(final String message) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        result.completeExceptionally(new EndpointBusyException(message));
+        return result;
+    }
+}
@@ -0,0 +1,400 @@
+package com.labs1904.aws.elasticsearch.springboot.services;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.Request;
+import com.amazonaws.http.ExecutionContext;
+import com.amazonaws.http.HttpMethodName;
+import com.labs1904.aws.elasticsearch.springboot.config.ConfigurationInfo;
+import com.labs1904.aws.elasticsearch.springboot.constants.ElasticSearchConstants;
+import com.labs1904.aws.elasticsearch.springboot.exceptions.ElasticSearchException;
+import com.labs1904.aws.elasticsearch.springboot.handlers.AwsRequestSigner;
+import com.labs1904.aws.elasticsearch.springboot.handlers.AwsResponse;
+import com.labs1904.aws.elasticsearch.springboot.handlers.ElasticSearchClientHandler;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Chooses which ElasticSearch endpoint a search is sent to.
+ *
+ * Writes always go to the primary domain. Searches are spread over the primary and its read replicas, picking the
+ * endpoint with the fewest searches in flight, or the lowest recent latency weighted by the searches in flight. An
+ * endpoint is left out while its circuit is open or its last health check failed, and a search that fails on one
+ * endpoint is sent once more to another. With hedging on, a search that has not been answered within the recent p95
+ * latency of its endpoint is also sent to a second endpoint, and whichever answers first is used.
+ */
+@Named
+public class EndpointRouter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EndpointRouter.class);
+
+    // Latencies kept per endpoint to find the hedge delay, and how many are needed before hedging starts
+    private static final int LATENCY_SAMPLES = 128;
+    private static final int MIN_LATENCY_SAMPLES = 20;
+    private static final double EWMA_WEIGHT = 0.2;
+
+    private final ConfigurationInfo configurationInfo;
+    private final ConfigurationInfo.Routing settings;
+    private final CircuitBreaker circuitBreaker;
+    private final AwsRequestSigner awsRequestSigner;
+    private final ElasticSearchClientHandler elasticSearchClientHandler;
+    private final ExecutorService hedgeExecutor;
+
+    private final Target primary;
+    private final List<Target> targets;
+    private final Counter hedgesSent;
+    private final Counter hedgesWon;
+    private final Counter failovers;
+
+    private ScheduledExecutorService healthChecker;
+
+    @Inject
+    public EndpointRouter(final ConfigurationInfo configurationInfo, final CircuitBreaker circuitBreaker,
+                          final AwsRequestSigner awsRequestSigner,
+                          final ElasticSearchClientHandler elasticSearchClientHandler,
+                          @Named("hedgeExecutor") final ExecutorService hedgeExecutor,
+                          final MeterRegistry meterRegistry) {
+        this.configurationInfo = configurationInfo;
+        this.settings = configurationInfo.getRouting();
+        this.circuitBreaker = circuitBreaker;
+        this.awsRequestSigner = awsRequestSigner;
+        this.elasticSearchClientHandler = elasticSearchClientHandler;
+        this.hedgeExecutor = hedgeExecutor;
+
+        this.primary = new Target(configurationInfo.getEndpoint(), configurationInfo.getRegion());
+        final List<Target> readTargets = new ArrayList<>();
+        if (settings.isPrimaryReads() || settings.getReplicas().isEmpty()) {
+            readTargets.add(primary);
+        }
+        for (ConfigurationInfo.Replica replica : settings.getReplicas()) {
+            readTargets.add(new Target(replica.getUrl(),
+                    replica.getRegion() != null ? replica.getRegion() : configurationInfo.getRegion()));
+        }
+        this.targets = Collections.unmodifiableList(readTargets);
+
+        for (Target target : targets) {
+            Gauge.builder("elasticsearch.routing.outstanding", target, t -> t.outstanding.get())
+                    .description("Searches in flight to the endpoint")
+                    .tag("endpoint", target.key)
+                    .register(meterRegistry);
+            Gauge.builder("elasticsearch.routing.healthy", target, t -> t.healthy ? 1 : 0)
+                    .description("Whether the last health check of the endpoint passed")
+                    .tag("endpoint", target.key)
+                    .register(meterRegistry);
+        }
+        this.hedgesSent = hedges(meterRegistry, "sent");
+        this.hedgesWon = hedges(meterRegistry, "won");
+        this.failovers = Counter.builder("elasticsearch.routing.failovers")
+                .description("Searches sent to another endpoint after failing on the first")
+                .register(meterRegistry);
+    }
+
+    private static Counter hedges(final MeterRegistry meterRegistry, final String outcome) {
+        return Counter.builder("elasticsearch.routing.hedges")
+                .description("Searches sent to a second endpoint because the first was slow, and how many of them "
+                        + "answered first")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (targets.size() < 2) {
+            return;
+        }
+        healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "es-health-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        healthChecker.scheduleWithFixedDelay(this::checkHealth, 0, settings.getHealthCheckIntervalMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (healthChecker != null) {
+            healthChecker.shutdownNow();
+        }
+    }
+
+    /**
+     * @return The primary domain, which every write is sent to
+     */
+    public Target getPrimary() {
+        return primary;
+    }
+
+    /**
+     * Send a search to the best endpoint, to a second endpoint if it fails, and with hedging on, to a second endpoint
+     * as well when the first is slow to answer
+     *
+     * @param attempt Sends the search to the given endpoint
+     * @return The first answer
+     * @throws ElasticSearchException When the search failed on every endpoint it was sent to
+     */
+    public AwsResponse read(final Function<Target, AwsResponse> attempt) {
+        final Target first = select(null);
+        // The hedge delay is zero until the endpoint has answered enough searches to know its latency
+        final long delayNanos = first.hedgeDelayNanos;
+        if (!settings.isHedging() || targets.size() < 2 || delayNanos == 0) {
+            return failover(first, attempt);
+        }
+
+        final CompletableFuture<AwsResponse> firstResult;
+        try {
+            firstResult = CompletableFuture.supplyAsync(() -> timed(first, attempt), hedgeExecutor);
+        } catch (RejectedExecutionException e) {
+            return failover(first, attempt);
+        }
+        try {
+            return firstResult.get(delayNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // Slower than usual, hedge below
+        } catch (ExecutionException e) {
+            if (!(e.getCause() instanceof ElasticSearchException)) {
+                throw rethrow(e.getCause());
+            }
+            final Target second = select(first);
+            if (second == null) {
+                throw (ElasticSearchException) e.getCause();
+            }
+            failovers.increment();
+            return timed(second, attempt);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            firstResult.thenAccept(EndpointRouter::close);
+            throw new IllegalStateException("Interrupted while waiting for ElasticSearch", e);
+        }
+
+        final Target second = select(first);
+        if (second == null) {
+            return join(firstResult);
+        }
+        final CompletableFuture<AwsResponse> secondResult;
+        try {
+            secondResult = CompletableFuture.supplyAsync(() -> timed(second, attempt), hedgeExecutor);
+        } catch (RejectedExecutionException e) {
+            return join(firstResult);
+        }
+        hedgesSent.increment();
+        return join(firstAnswer(firstResult, secondResult));
+    }
+
+    /**
+     * @return The answer that arrives first, or the last failure when both fail. The other answer is closed when it
+     * arrives, to release its connection.
+     */
+    private CompletableFuture<AwsResponse> firstAnswer(final CompletableFuture<AwsResponse> first,
+                                                       final CompletableFuture<AwsResponse> hedge) {
+        final CompletableFuture<AwsResponse> winner = new CompletableFuture<>();
+        final AtomicInteger failures = new AtomicInteger();
+        for (CompletableFuture<AwsResponse> result : Arrays.asList(first, hedge)) {
+            result.whenComplete((response, failure) -> {
+                if (failure != null) {
+                    if (failures.incrementAndGet() == 2) {
+                        winner.completeExceptionally(failure);
+                    }
+                } else if (winner.complete(response)) {
+                    if (result == hedge) {
+                        hedgesWon.increment();
+                    }
+                } else {
+                    close(response);
+                }
+            });
+        }
+        return winner;
+    }
+
+    private AwsResponse failover(final Target first, final Function<Target, AwsResponse> attempt) {
+        try {
+            return timed(first, attempt);
+        } catch (ElasticSearchException e) {
+            final Target second = select(first);
+            if (second == null) {
+                throw e;
+            }
+            failovers.increment();
+            return timed(second, attempt);
+        }
+    }
+
+    /**
+     * Send the search to the endpoint, counting it as in flight while it runs, and record how long it took to answer
+     */
+    private AwsResponse timed(final Target target, final Function<Target, AwsResponse> attempt) {
+        target.outstanding.incrementAndGet();
+        final long started = System.nanoTime();
+        try {
+            final AwsResponse response = attempt.apply(target);
+            target.record(System.nanoTime() - started);
+            return response;
+        } finally {
+            target.outstanding.decrementAndGet();
+        }
+    }
+
+    /**
+     * Pick the endpoint for a search
+     *
+     * @param exclude An endpoint not to pick, or null
+     * @return The endpoint. When no endpoint is available the primary is returned, or null when it is excluded.
+     */
+    Target select(final Target exclude) {
+        Target best = null;
+        double bestScore = Double.MAX_VALUE;
+        // Start at a random endpoint so that ties are spread evenly
+        final int offset = ThreadLocalRandom.current().nextInt(targets.size());
+        for (int i = 0; i < targets.size(); i++) {
+            final Target target = targets.get((offset + i) % targets.size());
+            if (target == exclude || !target.healthy || !circuitBreaker.circuit(target.key).isAvailable()) {
+                continue;
+            }
+            final double score = settings.getSelection() == ConfigurationInfo.Routing.Selection.LATENCY_WEIGHTED
+                    ? target.ewmaNanos * (target.outstanding.get() + 1)
+                    : target.outstanding.get();
+            if (score < bestScore) {
+                best = target;
+                bestScore = score;
+            }
+        }
+        if (best == null && exclude != primary) {
+            return primary;
+        }
+        return best;
+    }
+
+    /**
+     * Ask every endpoint for its cluster health. An endpoint that does not answer, or answers with an error, gets no
+     * searches until it passes a later check. A 401 or 403 still counts as healthy: domains with fine-grained access
+     * control often deny cluster APIs to a role that may only read the index, and the endpoint did answer.
+     */
+    private void checkHealth() {
+        for (Target target : targets) {
+            boolean healthy;
+            try {
+                final Request<?> request = new DefaultRequest<>(configurationInfo.getServiceName());
+                request.setEndpoint(URI.create(target.url + "/" + ElasticSearchConstants.HEALTH_API));
+                request.setHttpMethod(HttpMethodName.GET);
+                awsRequestSigner.sign(request, target.region);
+                elasticSearchClientHandler.execute(new ExecutionContext(true), request);
+                healthy = true;
+            } catch (AmazonServiceException e) {
+                healthy = e.getStatusCode() == HttpStatus.UNAUTHORIZED.value()
+                        || e.getStatusCode() == HttpStatus.FORBIDDEN.value();
+                if (!healthy) {
+                    unhealthy(target, e);
+                }
+            } catch (Exception e) {
+                unhealthy(target, e);
+                healthy = false;
+            }
+            if (healthy && !target.healthy) {
+                LOGGER.info("ElasticSearch at {} passed its health check, putting it back in rotation.", target.key);
+            }
+            target.healthy = healthy;
+        }
+    }
+
+    private static void unhealthy(final Target target, final Exception e) {
+        if (target.healthy) {
+            LOGGER.warn("Health check of ElasticSearch at {} failed, taking it out of rotation: {}",
+                    target.key, e.getMessage());
+        }
+    }
+
+    private static AwsResponse join(final CompletableFuture<AwsResponse> result) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            throw rethrow(e.getCause());
+        }
+    }
+
+    private static RuntimeException rethrow(final Throwable failure) {
+        if (failure instanceof RuntimeException) {
+            return (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        return new IllegalStateException(failure);
+    }
+
+    private static void close(final AwsResponse response) {
+        if (response != null) {
+            response.close();
+        }
+    }
+
+    /**
+     * An endpoint that serves searches, with the searches in flight to it and its recent latency
+     */
+    public final class Target {
+        private final String url;
+        private final String region;
+        private final String key;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final long[] latencies = new long[LATENCY_SAMPLES];
+
+        private volatile boolean healthy = true;
+        private volatile double ewmaNanos;
+        private volatile long hedgeDelayNanos;
+        private long samples;
+
+        private Target(final String url, final String region) {
+            this.url = url;
+            this.region = region;
+            this.key = CircuitBreaker.endpoint(URI.create(url));
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public String getRegion() {
+            return region;
+        }
+
+        private synchronized void record(final long nanos) {
+            ewmaNanos = samples == 0 ? nanos : ewmaNanos + EWMA_WEIGHT * (nanos - ewmaNanos);
+            latencies[(int) (samples % LATENCY_SAMPLES)] = nanos;
+            samples++;
+            // Sorting the window is cheap, but not so cheap that it is worth doing for every search
+            if (samples == MIN_LATENCY_SAMPLES || (samples > MIN_LATENCY_SAMPLES && samples % 16 == 0)) {
+                final long[] sorted = Arrays.copyOf(latencies, (int) Math.min(samples, LATENCY_SAMPLES));
+                Arrays.sort(sorted);
+                final int index = (int) Math.ceil(settings.getHedgePercentile() * sorted.length) - 1;
+                hedgeDelayNanos = Math.max(sorted[Math.max(0, index)],
+                        TimeUnit.MILLISECONDS.toNanos(settings.getHedgeMinDelayMillis()));
+            }
+        }
+    }
+}
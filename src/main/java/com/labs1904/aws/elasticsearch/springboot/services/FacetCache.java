@@ -0,0 +1,56 @@
+package com.labs1904.aws.elasticsearch.springboot.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.labs1904.aws.elasticsearch.springboot.config.ConfigurationInfo;
+import com.labs1904.aws.elasticsearch.springboot.models.FacetResult;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process cache of facet counts, keyed on the normalized query and the requested facets.
+ *
+ * Facet counts are requested far more often than the movies change, and a count that is a few seconds old is still
+ * useful, so entries simply expire a short fixed time after they were written. Unlike the search result cache, writes
+ * do not drop cached counts.
+ */
+@Named
+public class FacetCache {
+
+    private final ConfigurationInfo.Facets settings;
+    private final Cache<SearchResultCache.Key, FacetResult> cache;
+
+    @Inject
+    public FacetCache(final ConfigurationInfo configurationInfo, final MeterRegistry meterRegistry) {
+        this.settings = configurationInfo.getFacets();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(settings.getCacheMaxEntries())
+                .expireAfterWrite(settings.getCacheTtlMillis(), TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "elasticsearch.facets");
+    }
+
+    /**
+     * @param key The key
+     * @return The cached facet counts, or null
+     */
+    public FacetResult get(final SearchResultCache.Key key) {
+        return settings.isCacheEnabled() ? cache.getIfPresent(key) : null;
+    }
+
+    /**
+     * @param key The key
+     * @param value The facet counts, not cached when null
+     */
+    public void put(final SearchResultCache.Key key, final FacetResult value) {
+        if (settings.isCacheEnabled() && value != null) {
+            cache.put(key, value);
+        }
+    }
+}
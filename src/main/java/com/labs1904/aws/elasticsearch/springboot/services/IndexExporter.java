@@ -0,0 +1,224 @@
+package com.labs1904.aws.elasticsearch.springboot.services;
+
+import com.amazonaws.Request;
+import com.amazonaws.http.HttpMethodName;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.labs1904.aws.elasticsearch.springboot.config.ConfigurationInfo;
+import com.labs1904.aws.elasticsearch.springboot.constants.ElasticSearchConstants;
+import com.labs1904.aws.elasticsearch.springboot.exceptions.ElasticSearchException;
+import com.labs1904.aws.elasticsearch.springboot.handlers.AwsResponse;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Exports every document of an index as NDJSON, one _source per line.
+ *
+ * The index is read with a sliced scroll: each slice is scrolled on its own thread, and every page is converted to
+ * NDJSON as it is read from the response stream. Pages are handed to the writing thread through a small bounded
+ * queue, so memory use depends on the page size and the number of slices, never on the size of the index.
+ */
+@Named
+public class IndexExporter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IndexExporter.class);
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final byte[] END_OF_SLICE = new byte[0];
+    private static final long HANDOFF_TIMEOUT_SECONDS = 1;
+
+    @Inject
+    private ConfigurationInfo configurationInfo;
+
+    @Inject
+    private ElasticSearchService elasticSearchService;
+
+    @Inject
+    @Named("exportExecutor")
+    private ExecutorService exportExecutor;
+
+    /**
+     * Write every document of the index to the output as NDJSON
+     *
+     * @param index The index to export
+     * @param fields Optional list of _source fields to export, all fields when null or empty
+     * @param slices The number of slices to read in parallel, capped at the configured maximum
+     * @param outputStream The output
+     * @throws IOException Throws IOException when the output cannot be written, or a slice could not be read
+     */
+    public void export(final String index, final Set<String> fields, final int slices,
+                       final OutputStream outputStream) throws IOException {
+        final int sliceCount = Math.max(1, Math.min(slices, configurationInfo.getExport().getMaxSlices()));
+        final BlockingQueue<byte[]> pages = new ArrayBlockingQueue<>(sliceCount * 2);
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        final ExportState state = new ExportState();
+
+        for (int slice = 0; slice < sliceCount; slice++) {
+            final int sliceId = slice;
+            exportExecutor.execute(() -> scrollSlice(index, fields, sliceId, sliceCount, pages, failure, state));
+        }
+
+        try {
+            int finished = 0;
+            while (finished < sliceCount && failure.get() == null) {
+                final byte[] page = pages.take();
+                if (page == END_OF_SLICE) {
+                    finished++;
+                } else {
+                    outputStream.write(page);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while exporting " + index, e);
+        } finally {
+            state.cancelled = true;
+        }
+        if (failure.get() != null) {
+            throw new IOException("Failed to export " + index, failure.get());
+        }
+    }
+
+    /**
+     * Scroll through one slice of the index, handing each page to the writing thread
+     */
+    private void scrollSlice(final String index, final Set<String> fields, final int sliceId, final int sliceCount,
+                             final BlockingQueue<byte[]> pages, final AtomicReference<Exception> failure,
+                             final ExportState state) {
+        final ConfigurationInfo.Export settings = configurationInfo.getExport();
+        final Page page = new Page();
+        try {
+            final JSONObject query = new JSONObject();
+            query.put("size", settings.getPageSize());
+            query.put("sort", new JSONArray().put("_doc"));
+            if (sliceCount > 1) {
+                query.put("slice", new JSONObject().put("id", sliceId).put("max", sliceCount));
+            }
+            if (fields != null && !fields.isEmpty()) {
+                query.put("_source", fields);
+            }
+
+            final Map<String, List<String>> parameters = scrollParameters();
+            parameters.put("scroll", Collections.singletonList(settings.getScrollKeepAlive()));
+            readPage(elasticSearchService.generateSignedRequest(index + ElasticSearchConstants.SEARCH_API,
+                    query.toString(), parameters, HttpMethodName.POST), page);
+
+            while (page.hits > 0 && !state.cancelled && failure.get() == null) {
+                handOff(pages, page.ndjson.toByteArray(), state);
+
+                final JSONObject next = new JSONObject();
+                next.put("scroll", settings.getScrollKeepAlive());
+                next.put("scroll_id", page.scrollId);
+                readPage(elasticSearchService.generateSignedRequest(ElasticSearchConstants.SCROLL_API,
+                        next.toString(), scrollParameters(), HttpMethodName.POST), page);
+            }
+        } catch (Exception e) {
+            LOGGER.error("Failed to export slice {} of {}.", sliceId, index, e);
+            failure.compareAndSet(null, e);
+        } finally {
+            clearScroll(page.scrollId);
+            try {
+                handOff(pages, END_OF_SLICE, state);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Wait for space in the queue of pages. Pages are dropped once the writer has stopped, so that a slice never
+     * waits forever on a writer that has gone away.
+     */
+    private void handOff(final BlockingQueue<byte[]> pages, final byte[] page, final ExportState state) throws InterruptedException {
+        while (!pages.offer(page, HANDOFF_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            if (state.cancelled) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Execute a scroll request, and convert the hits to NDJSON while reading the response stream
+     */
+    private void readPage(final Request request, final Page page) throws IOException {
+        page.hits = 0;
+        page.ndjson.reset();
+        final AwsResponse response = elasticSearchService.executeStreamingRequest(request);
+        if (response == null) {
+            throw new IOException("Scroll request to ElasticSearch failed");
+        }
+        try (JsonParser parser = JSON_FACTORY.createParser(response.getContent());
+             JsonGenerator generator = JSON_FACTORY.createGenerator(page.ndjson)) {
+            generator.setRootValueSeparator(null);
+            while (parser.nextToken() != null) {
+                if (parser.currentToken() != JsonToken.FIELD_NAME) {
+                    continue;
+                }
+                final String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("_scroll_id".equals(field)) {
+                    page.scrollId = parser.getText();
+                } else if ("_source".equals(field)) {
+                    generator.copyCurrentStructure(parser);
+                    generator.flush();
+                    page.ndjson.write('\n');
+                    page.hits++;
+                }
+            }
+        } finally {
+            response.close();
+        }
+    }
+
+    private void clearScroll(final String scrollId) {
+        if (scrollId == null) {
+            return;
+        }
+        final JSONObject body = new JSONObject().put("scroll_id", new JSONArray().put(scrollId));
+        try {
+            final AwsResponse response = elasticSearchService.executeRequest(elasticSearchService.generateSignedRequest(
+                    ElasticSearchConstants.SCROLL_API, body.toString(), null, HttpMethodName.DELETE));
+            if (response == null) {
+                LOGGER.warn("Failed to clear scroll, it will expire on its own.");
+            }
+        } catch (ElasticSearchException e) {
+            LOGGER.warn("Failed to clear scroll, it will expire on its own: {}", e.getMessage());
+        }
+    }
+
+    private Map<String, List<String>> scrollParameters() {
+        final Map<String, List<String>> parameters = new HashMap<>();
+        parameters.put(ElasticSearchConstants.FILTER_PATH, Collections.singletonList(ElasticSearchConstants.SCROLL_FILTER));
+        return parameters;
+    }
+
+    private static class Page {
+        private final ByteArrayOutputStream ndjson = new ByteArrayOutputStream();
+        private String scrollId;
+        private int hits;
+    }
+
+    private static class ExportState {
+        private volatile boolean cancelled;
+    }
+}
@@ -0,0 +1,564 @@
+package com.labs1904.aws.elasticsearch.springboot.services;
+
+import com.amazonaws.http.HttpMethodName;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.labs1904.aws.elasticsearch.springboot.config.ConfigurationInfo;
+import com.labs1904.aws.elasticsearch.springboot.constants.ElasticSearchConstants;
+import com.labs1904.aws.elasticsearch.springboot.handlers.AwsResponse;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ClassPathResource;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the movies index in line with the versioned mapping and settings held in the application's resources.
+ *
+ * When the application starts, the index is read from the cluster on a background thread, and every field and setting
+ * is compared with the mapping. The differences are reported as drift. Nothing is changed unless asked for: in APPLY
+ * mode a missing index is created, as a versioned index behind the movies alias, and the differences ElasticSearch can
+ * change in place are applied: new fields, and the replica count and refresh interval. A changed field type, shard
+ * count or analyzer needs a new index. In REINDEX mode such an index is built with the mapping, the documents are
+ * copied into it with _reindex, and the alias is moved to it.
+ */
+@Named
+public class IndexManager {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IndexManager.class);
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    // The name searches and writes use, an alias of the versioned index once the index is managed
+    private static final String INDEX = ElasticSearchConstants.MOVIES_INDEX;
+    private static final long TASK_POLL_MILLIS = 1000;
+    // Settings that can be changed on an open index
+    private static final List<String> DYNAMIC_SETTINGS = List.of("number_of_replicas", "refresh_interval");
+
+    private final ConfigurationInfo.Index settings;
+    private final ElasticSearchService elasticSearchService;
+    private final KeywordFields keywordFields;
+
+    private JsonNode expected;
+    private volatile List<String> drift = Collections.emptyList();
+
+    @Inject
+    public IndexManager(final ConfigurationInfo configurationInfo, final ElasticSearchService elasticSearchService,
+                        final KeywordFields keywordFields, final MeterRegistry meterRegistry) {
+        this.settings = configurationInfo.getIndex();
+        this.elasticSearchService = elasticSearchService;
+        this.keywordFields = keywordFields;
+
+        Gauge.builder("elasticsearch.index.drift", this, manager -> manager.getDrift().size())
+                .description("Differences between the movies index and the mapping held by the application")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (settings.getMode() == ConfigurationInfo.Index.Mode.NONE) {
+            return;
+        }
+        try (InputStream mapping = new ClassPathResource(settings.getMapping()).getInputStream()) {
+            expected = OBJECT_MAPPER.readTree(mapping);
+        }
+        // The cluster may be slow or unreachable, which must not hold up the start of the application
+        final Thread thread = new Thread(this::check, "es-index-manager");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return The differences found by the last check, empty when the index matches the mapping
+     */
+    public List<String> getDrift() {
+        return drift;
+    }
+
+    /**
+     * @return The version of the mapping held by the application
+     */
+    public int getVersion() {
+        return expected != null ? expected.path("mappings").path("_meta").path("version").asInt() : 0;
+    }
+
+    /**
+     * Compare the index with the mapping. In APPLY and REINDEX mode create the index when it is missing and apply what
+     * can be changed in place, and in REINDEX mode move the index to a new one when that is not enough. Failures are
+     * logged, the application keeps running either way.
+     */
+    void check() {
+        try {
+            CurrentIndex index = readIndex();
+            if (index == null) {
+                LOGGER.warn("Unable to read the {} index, its mapping was not checked.", INDEX);
+                return;
+            }
+            final ConfigurationInfo.Index.Mode mode = settings.getMode();
+            final boolean apply = mode == ConfigurationInfo.Index.Mode.APPLY
+                    || mode == ConfigurationInfo.Index.Mode.REINDEX;
+            if (index.isMissing()) {
+                if (apply && createIndex(versionedName(index), true)) {
+                    LOGGER.info("Created the {} index with mapping version {}.", INDEX, getVersion());
+                    drift = Collections.emptyList();
+                    keywordFields.update(keywordFields(expected));
+                } else {
+                    drift = Collections.singletonList("The " + INDEX + " index does not exist");
+                    LOGGER.warn("The {} index does not exist.", INDEX);
+                }
+                return;
+            }
+
+            Drift found = compare(index.definition);
+            final boolean reindex = mode == ConfigurationInfo.Index.Mode.REINDEX && found.conflicts;
+            // An index that is about to be replaced is not worth changing in place
+            if (apply && !reindex && found.isApplicable()) {
+                applySettings(found.settings);
+                applyMapping(found);
+                index = reread(index);
+                found = compare(index.definition);
+            }
+            if (reindex && reindex(index)) {
+                index = reread(index);
+                found = compare(index.definition);
+            }
+            drift = Collections.unmodifiableList(found.differences);
+            keywordFields.update(keywordFields(index.definition));
+            if (drift.isEmpty()) {
+                LOGGER.info("The {} index matches mapping version {}.", INDEX, getVersion());
+            } else {
+                LOGGER.warn("The {} index differs from mapping version {}:\n  {}", INDEX, getVersion(),
+                        String.join("\n  ", drift));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            LOGGER.warn("Unable to check the mapping of the {} index: {}", INDEX, e.getMessage());
+        }
+    }
+
+    /**
+     * @return The index that the movies name points to, missing when there is none, or null when the request failed
+     */
+    private CurrentIndex readIndex() throws IOException {
+        final Map<String, List<String>> parameters = Map.of("ignore_unavailable", List.of("true"));
+        final AwsResponse response = elasticSearchService.executeRequest(elasticSearchService.generateSignedRequest(
+                INDEX, null, parameters, HttpMethodName.GET));
+        if (response == null) {
+            return null;
+        }
+        // An alias is answered with the index it points to, under that index's own name
+        final Iterator<Map.Entry<String, JsonNode>> indices = OBJECT_MAPPER.readTree(response.getBody()).fields();
+        if (!indices.hasNext()) {
+            return new CurrentIndex(null, null);
+        }
+        final Map.Entry<String, JsonNode> index = indices.next();
+        return new CurrentIndex(index.getKey(), index.getValue());
+    }
+
+    /**
+     * Read the index again after changing it, keeping what was read before when that fails
+     */
+    private CurrentIndex reread(final CurrentIndex before) throws IOException {
+        final CurrentIndex index = readIndex();
+        return index != null && !index.isMissing() ? index : before;
+    }
+
+    /**
+     * @return The name of the index for the version of the mapping, or a unique name when the current index already
+     * has that name
+     */
+    private String versionedName(final CurrentIndex current) {
+        final String name = INDEX + "_v" + getVersion();
+        return name.equals(current.name) ? name + "_" + System.currentTimeMillis() : name;
+    }
+
+    private boolean createIndex(final String name, final boolean withAlias) {
+        final ObjectNode body = OBJECT_MAPPER.createObjectNode();
+        body.set("settings", expected.path("settings"));
+        body.putObject("mappings").set(ElasticSearchConstants.MOVIES_DOCUMENT_TYPE, expected.path("mappings"));
+        if (withAlias) {
+            body.putObject("aliases").putObject(INDEX);
+        }
+
+        return elasticSearchService.executeRequest(elasticSearchService.generateSignedRequest(
+                name, body.toString(), null, HttpMethodName.PUT)) != null;
+    }
+
+    /**
+     * Build a new index with the mapping, copy every document into it, and point the alias at it. An index that was
+     * created before the index was managed has the name the alias needs, so it is deleted in the same atomic change;
+     * an older versioned index is kept, to roll back to. Documents written while the copy runs are not carried over.
+     *
+     * @return True when the alias was moved to the new index
+     */
+    private boolean reindex(final CurrentIndex current) throws IOException, InterruptedException {
+        final String target = versionedName(current);
+        LOGGER.info("Reindexing {} into {} with mapping version {}.", current.name, target, getVersion());
+        if (!createIndex(target, false)) {
+            LOGGER.warn("Unable to create the {} index, the {} index was not reindexed.", target, INDEX);
+            return false;
+        }
+        final ObjectNode copy = OBJECT_MAPPER.createObjectNode();
+        copy.putObject("source").put("index", current.name);
+        copy.putObject("dest").put("index", target);
+        if (!runTask("_reindex", copy.toString(), Collections.emptyMap())) {
+            LOGGER.warn("Reindexing into {} failed, {} still points to {}.", target, INDEX, current.name);
+            return false;
+        }
+
+        final ObjectNode aliases = OBJECT_MAPPER.createObjectNode();
+        final ArrayNode actions = aliases.putArray("actions");
+        actions.addObject().putObject("add").put("index", target).put("alias", INDEX);
+        if (current.isAlias()) {
+            actions.addObject().putObject("remove").put("index", current.name).put("alias", INDEX);
+        } else {
+            actions.addObject().putObject("remove_index").put("index", current.name);
+        }
+        if (elasticSearchService.executeRequest(elasticSearchService.generateSignedRequest(
+                "_aliases", aliases.toString(), null, HttpMethodName.POST)) == null) {
+            LOGGER.warn("Unable to point {} at {}, it still points to {}.", INDEX, target, current.name);
+            return false;
+        }
+        LOGGER.info("The {} alias now points to {}.", INDEX, target);
+        return true;
+    }
+
+    /**
+     * Start a long running request, such as _reindex, as a task, and wait for it to finish. A large index can take far
+     * longer to copy than any request timeout, so the task is polled instead.
+     *
+     * @return True when the task finished without failures
+     */
+    private boolean runTask(final String url, final String body, final Map<String, List<String>> parameters)
+            throws IOException, InterruptedException {
+        final Map<String, List<String>> taskParameters = new HashMap<>(parameters);
+        taskParameters.put("wait_for_completion", List.of("false"));
+        final AwsResponse started = elasticSearchService.executeRequest(elasticSearchService.generateSignedRequest(
+                url, body, taskParameters, HttpMethodName.POST));
+        if (started == null) {
+            return false;
+        }
+        final String task = OBJECT_MAPPER.readTree(started.getBody()).path("task").asText();
+        while (true) {
+            Thread.sleep(TASK_POLL_MILLIS);
+            final AwsResponse status = elasticSearchService.executeRequest(elasticSearchService.generateSignedRequest(
+                    "_tasks/" + task, null, null, HttpMethodName.GET));
+            if (status == null) {
+                return false;
+            }
+            final JsonNode result = OBJECT_MAPPER.readTree(status.getBody());
+            if (!result.path("completed").asBoolean()) {
+                continue;
+            }
+            final JsonNode failures = result.path("response").path("failures");
+            if (result.has("error") || failures.size() > 0) {
+                LOGGER.warn("{} failed: {}", url, result.has("error") ? result.path("error") : failures);
+                return false;
+            }
+            LOGGER.info("{} finished, {} documents.", url, result.path("response").path("total").asLong());
+            return true;
+        }
+    }
+
+    private void applySettings(final ObjectNode changes) {
+        if (changes.size() == 0) {
+            return;
+        }
+        final ObjectNode body = OBJECT_MAPPER.createObjectNode();
+        body.set("index", changes);
+        if (elasticSearchService.executeRequest(elasticSearchService.generateSignedRequest(
+                INDEX + "/_settings", body.toString(), null, HttpMethodName.PUT)) != null) {
+            LOGGER.info("Updated the settings of the {} index: {}", INDEX, changes);
+        }
+    }
+
+    /**
+     * Add the missing fields, and index the existing documents again so that they have the new fields. The version of
+     * the mapping is only updated when no existing field conflicts with it.
+     */
+    private void applyMapping(final Drift found) throws IOException, InterruptedException {
+        if (!found.mappingChanged) {
+            return;
+        }
+        final ObjectNode body = OBJECT_MAPPER.createObjectNode();
+        body.set("dynamic", expected.path("mappings").path("dynamic"));
+        body.set("properties", found.mappingAdditions);
+        if (!putMapping(body)) {
+            return;
+        }
+        if (found.mappingAdditions.size() > 0) {
+            LOGGER.info("Updated the mapping of the {} index, added fields: {}", INDEX,
+                    fieldNames(found.mappingAdditions));
+            // A document only has the fields that were mapped when it was written
+            if (!runTask(INDEX + "/_update_by_query", null, Map.of("conflicts", List.of("proceed")))) {
+                LOGGER.warn("Unable to index the documents of the {} index with the added fields.", INDEX);
+                return;
+            }
+        }
+        if (!found.conflicts) {
+            final ObjectNode meta = OBJECT_MAPPER.createObjectNode();
+            meta.set("_meta", expected.path("mappings").path("_meta"));
+            putMapping(meta);
+        }
+    }
+
+    private boolean putMapping(final ObjectNode body) {
+        return elasticSearchService.executeRequest(elasticSearchService.generateSignedRequest(
+                INDEX + "/_mapping/" + ElasticSearchConstants.MOVIES_DOCUMENT_TYPE, body.toString(), null,
+                HttpMethodName.PUT)) != null;
+    }
+
+    /**
+     * Compare the index with the mapping
+     *
+     * @param index The index as returned by ElasticSearch
+     * @return The differences
+     */
+    Drift compare(final JsonNode index) {
+        final Drift found = new Drift();
+
+        final JsonNode actualSettings = index.path("settings").path("index");
+        final Iterator<Map.Entry<String, JsonNode>> wanted = expected.path("settings").path("index").fields();
+        while (wanted.hasNext()) {
+            final Map.Entry<String, JsonNode> setting = wanted.next();
+            final JsonNode actual = actualSettings.path(setting.getKey());
+            if (!same(setting.getValue(), actual)) {
+                found.differences.add("Setting " + setting.getKey() + " is " + text(actual) + ", expected "
+                        + setting.getValue().asText());
+                if (DYNAMIC_SETTINGS.contains(setting.getKey())) {
+                    found.settings.set(setting.getKey(), setting.getValue());
+                } else {
+                    found.conflicts = true;
+                }
+            }
+        }
+        if (!same(expected.path("settings").path("analysis"), actualSettings.path("analysis"))) {
+            found.differences.add("Analysis settings differ, expected " + expected.path("settings").path("analysis"));
+            found.conflicts = true;
+        }
+
+        final JsonNode mapping = typeless(index.path("mappings"));
+        final int version = mapping.path("_meta").path("version").asInt();
+        if (version != getVersion()) {
+            found.differences.add("Mapping version is " + version + ", expected " + getVersion());
+            found.mappingChanged = true;
+        }
+        if (!same(expected.path("mappings").path("dynamic"), mapping.path("dynamic"))) {
+            found.differences.add("Dynamic mapping is " + text(mapping.path("dynamic")) + ", expected "
+                    + expected.path("mappings").path("dynamic").asText());
+            found.mappingChanged = true;
+        }
+        compareFields("", expected.path("mappings").path("properties"), mapping.path("properties"), found,
+                found.mappingAdditions);
+        found.mappingChanged |= found.mappingAdditions.size() > 0;
+        return found;
+    }
+
+    /**
+     * Compare the fields of an object, or the sub-fields of a field, and collect the missing ones
+     */
+    private void compareFields(final String path, final JsonNode wanted, final JsonNode actual, final Drift found,
+                               final ObjectNode additions) {
+        final Iterator<Map.Entry<String, JsonNode>> fields = wanted.fields();
+        while (fields.hasNext()) {
+            final Map.Entry<String, JsonNode> field = fields.next();
+            final String name = path + field.getKey();
+            final JsonNode definition = field.getValue();
+            final JsonNode current = actual.path(field.getKey());
+            if (current.isMissingNode()) {
+                found.differences.add("Field " + name + " is not mapped");
+                additions.set(field.getKey(), definition);
+                continue;
+            }
+
+            boolean conflicting = false;
+            final Iterator<Map.Entry<String, JsonNode>> parameters = definition.fields();
+            while (parameters.hasNext()) {
+                final Map.Entry<String, JsonNode> parameter = parameters.next();
+                if (parameter.getKey().equals("properties") || parameter.getKey().equals("fields")) {
+                    continue;
+                }
+                if (!same(parameter.getValue(), current.path(parameter.getKey()))) {
+                    found.differences.add("Field " + name + " has " + parameter.getKey() + " "
+                            + text(current.path(parameter.getKey())) + ", expected " + parameter.getValue().asText());
+                    conflicting = true;
+                }
+            }
+            if (!definition.has("type") && current.has("type") && !current.path("type").asText().equals("object")) {
+                found.differences.add("Field " + name + " has type " + current.path("type").asText()
+                        + ", expected object");
+                conflicting = true;
+            }
+            found.conflicts |= conflicting;
+
+            if (definition.has("properties")) {
+                final ObjectNode nested = OBJECT_MAPPER.createObjectNode();
+                compareFields(name + ".", definition.path("properties"), current.path("properties"), found, nested);
+                if (nested.size() > 0) {
+                    additions.putObject(field.getKey()).set("properties", nested);
+                }
+            }
+            if (definition.has("fields")) {
+                final ObjectNode subFields = OBJECT_MAPPER.createObjectNode();
+                compareFields(name + ".", definition.path("fields"), current.path("fields"), found, subFields);
+                // A conflicting parent cannot be sent again, so its sub-fields have to wait for a reindex
+                if (subFields.size() > 0 && !conflicting) {
+                    // A sub-field is added by sending its parent again, with the new sub-field
+                    final ObjectNode parent = ((ObjectNode) definition).deepCopy();
+                    parent.set("fields", subFields);
+                    additions.set(field.getKey(), parent);
+                }
+            }
+        }
+
+        // Fields ElasticSearch mapped on its own, from documents written before the index was managed
+        final Iterator<String> names = actual.fieldNames();
+        while (names.hasNext()) {
+            final String name = names.next();
+            if (!wanted.has(name)) {
+                found.differences.add("Field " + path + name + " is mapped, but not in the managed mapping");
+            }
+        }
+    }
+
+    /**
+     * @param index The index as returned by ElasticSearch, or the mapping held by the application
+     * @return The dotted paths of the fields mapped as keywords. Sub-fields, such as genre.raw, only count once the
+     * index has the current version of the mapping: an added sub-field is empty until the documents have been indexed
+     * again, and the version is only updated after that.
+     */
+    Set<String> keywordFields(final JsonNode index) {
+        final JsonNode mapping = typeless(index.path("mappings"));
+        final boolean current = mapping.path("_meta").path("version").asInt() == getVersion();
+        final Set<String> fields = new HashSet<>();
+        collectKeywordFields("", mapping.path("properties"), current, fields);
+        return fields;
+    }
+
+    private static void collectKeywordFields(final String path, final JsonNode properties, final boolean subFields,
+                                             final Set<String> fields) {
+        final Iterator<Map.Entry<String, JsonNode>> iterator = properties.fields();
+        while (iterator.hasNext()) {
+            final Map.Entry<String, JsonNode> field = iterator.next();
+            final String name = path + field.getKey();
+            if ("keyword".equals(field.getValue().path("type").asText())) {
+                fields.add(name);
+            }
+            collectKeywordFields(name + ".", field.getValue().path("properties"), subFields, fields);
+            if (subFields) {
+                collectKeywordFields(name + ".", field.getValue().path("fields"), false, fields);
+            }
+        }
+    }
+
+    /**
+     * @return The mapping of the movie type when the cluster still uses mapping types, or the mapping itself
+     */
+    private static JsonNode typeless(final JsonNode mappings) {
+        if (mappings.has("properties") || !mappings.has(ElasticSearchConstants.MOVIES_DOCUMENT_TYPE)) {
+            return mappings;
+        }
+        return mappings.path(ElasticSearchConstants.MOVIES_DOCUMENT_TYPE);
+    }
+
+    /**
+     * ElasticSearch returns every setting and most parameters as strings, so values are compared by their text
+     */
+    private static boolean same(final JsonNode expected, final JsonNode actual) {
+        if (expected.isMissingNode()) {
+            return true;
+        }
+        if (expected.isObject()) {
+            final Iterator<Map.Entry<String, JsonNode>> fields = expected.fields();
+            while (fields.hasNext()) {
+                final Map.Entry<String, JsonNode> field = fields.next();
+                if (!same(field.getValue(), actual.path(field.getKey()))) {
+                    return false;
+                }
+            }
+            return actual.isObject();
+        }
+        if (expected.isArray()) {
+            if (!actual.isArray() || actual.size() != expected.size()) {
+                return false;
+            }
+            for (int i = 0; i < expected.size(); i++) {
+                if (!same(expected.get(i), actual.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return !actual.isMissingNode() && expected.asText().equals(actual.asText());
+    }
+
+    private static String text(final JsonNode value) {
+        return value.isMissingNode() ? "not set" : value.asText();
+    }
+
+    private static List<String> fieldNames(final JsonNode node) {
+        final List<String> names = new ArrayList<>();
+        node.fieldNames().forEachRemaining(names::add);
+        return names;
+    }
+
+    /**
+     * The index the movies name points to, and its settings and mapping
+     */
+    private static final class CurrentIndex {
+        private final String name;
+        private final JsonNode definition;
+
+        private CurrentIndex(final String name, final JsonNode definition) {
+            this.name = name;
+            this.definition = definition;
+        }
+
+        private boolean isMissing() {
+            return name == null;
+        }
+
+        /**
+         * @return True when movies is an alias of a versioned index, rather than an index created before it was managed
+         */
+        private boolean isAlias() {
+            return !INDEX.equals(name);
+        }
+    }
+
+    /**
+     * The differences between the index and the mapping, and the changes that would remove the ones that can be
+     * changed in place
+     */
+    static final class Drift {
+        private final List<String> differences = new ArrayList<>();
+        private final ObjectNode settings = OBJECT_MAPPER.createObjectNode();
+        private final ObjectNode mappingAdditions = OBJECT_MAPPER.createObjectNode();
+        private boolean mappingChanged;
+        private boolean conflicts;
+
+        /**
+         * @return True when there are changes that can be made in place. Fields are still added when other fields
+         * conflict, as ElasticSearch only rejects an update that changes existing fields.
+         */
+        boolean isApplicable() {
+            return settings.size() > 0 || mappingChanged;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.labs1904.aws.elasticsearch.springboot.services;
+
+import javax.inject.Named;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * The fields of the movies index that the IndexManager found mapped as keywords when it last read the index.
+ *
+ * Exact-match criteria on these fields are sent as term filters. Until a field is confirmed, for example on an index
+ * created before the mapping was managed where it is analyzed text, its criteria are sent as match queries, which
+ * work on either mapping. Facets are only counted on confirmed keyword fields, as ElasticSearch cannot count text.
+ */
+@Named
+public class KeywordFields {
+
+    private volatile Set<String> fields = Collections.emptySet();
+
+    /**
+     * @return The dotted paths of the keyword fields, empty until the index has been read
+     */
+    public Set<String> get() {
+        return fields;
+    }
+
+    public boolean contains(final String field) {
+        return fields.contains(field);
+    }
+
+    void update(final Set<String> fields) {
+        this.fields = Collections.unmodifiableSet(fields);
+    }
+}
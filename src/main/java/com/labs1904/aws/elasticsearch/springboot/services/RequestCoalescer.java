@@ -0,0 +1,129 @@
+package com.labs1904.aws.elasticsearch.springboot.services;
+
+import com.labs1904.aws.elasticsearch.springboot.config.ConfigurationInfo;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Lets identical searches that run at the same time share one request to ElasticSearch.
+ *
+ * The first search for a key becomes the leader of a flight and sends the request. Searches for the same key that
+ * begin while the flight is open wait for the leader's result instead of sending their own. A waiting search gives up
+ * after the configured max wait, or when the leader has no result to share, and then sends its own request.
+ */
+@Named
+public class RequestCoalescer {
+
+    private final ConfigurationInfo.Coalescing settings;
+    private final ConcurrentMap<Object, CompletableFuture<byte[]>> flights = new ConcurrentHashMap<>();
+
+    private final Counter leaders;
+    private final Counter shared;
+    private final Counter timedOut;
+    private final Counter unshared;
+
+    @Inject
+    public RequestCoalescer(final ConfigurationInfo configurationInfo, final MeterRegistry meterRegistry) {
+        this.settings = configurationInfo.getCoalescing();
+        this.leaders = calls(meterRegistry, "leader");
+        this.shared = calls(meterRegistry, "shared");
+        this.timedOut = calls(meterRegistry, "timeout");
+        this.unshared = calls(meterRegistry, "unshared");
+
+        Gauge.builder("elasticsearch.coalescing.flights", flights, ConcurrentMap::size)
+                .description("Searches in flight that identical searches can share")
+                .register(meterRegistry);
+    }
+
+    private static Counter calls(final MeterRegistry meterRegistry, final String outcome) {
+        return Counter.builder("elasticsearch.coalescing.calls")
+                .description("Searches by whether they sent their own request, or shared the request of another search")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Join the flight of an identical search, or start a new one
+     *
+     * @param key The normalized search, or null when the search must not be shared
+     * @return The flight
+     */
+    public Flight begin(final Object key) {
+        if (!settings.isEnabled() || key == null) {
+            return new Flight(null, null, true);
+        }
+        final CompletableFuture<byte[]> mine = new CompletableFuture<>();
+        final CompletableFuture<byte[]> existing = flights.putIfAbsent(key, mine);
+        if (existing == null) {
+            leaders.increment();
+            return new Flight(key, mine, true);
+        }
+        return new Flight(key, existing, false);
+    }
+
+    public final class Flight {
+        private final Object key;
+        private final CompletableFuture<byte[]> result;
+        private final boolean leader;
+
+        private Flight(final Object key, final CompletableFuture<byte[]> result, final boolean leader) {
+            this.key = key;
+            this.result = result;
+            this.leader = leader;
+        }
+
+        /**
+         * @return True when this search must send the request itself
+         */
+        public boolean isLeader() {
+            return leader;
+        }
+
+        /**
+         * Wait for the result of the leader
+         *
+         * @return The shared result, or null when this search has to send its own request
+         */
+        public byte[] await() {
+            try {
+                final byte[] value = result.get(settings.getMaxWaitMillis(), TimeUnit.MILLISECONDS);
+                (value != null ? shared : unshared).increment();
+                return value;
+            } catch (TimeoutException e) {
+                // A leader this slow may never finish, so later searches start a new flight instead of waiting on it
+                flights.remove(key, result);
+                timedOut.increment();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                unshared.increment();
+            } catch (ExecutionException e) {
+                unshared.increment();
+            }
+            return null;
+        }
+
+        /**
+         * Share the result of the leader with every search waiting on it, and close the flight. Does nothing for a
+         * search that is not the leader, or once the flight is closed.
+         *
+         * @param value The result, or null when there is nothing to share
+         */
+        public void complete(final byte[] value) {
+            if (!leader || key == null) {
+                return;
+            }
+            flights.remove(key, result);
+            result.complete(value);
+        }
+    }
+}
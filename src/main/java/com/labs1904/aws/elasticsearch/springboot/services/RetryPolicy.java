@@ -0,0 +1,164 @@
+package com.labs1904.aws.elasticsearch.springboot.services;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.Request;
+import com.amazonaws.SdkClientException;
+import com.amazonaws.http.HttpMethodName;
+import com.labs1904.aws.elasticsearch.springboot.config.ConfigurationInfo;
+import com.labs1904.aws.elasticsearch.springboot.constants.ElasticSearchConstants;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides whether a failed request to ElasticSearch is sent again, and how long to wait before it is.
+ *
+ * Only requests that can safely be applied twice are retried, and only after a 429, 502, 503 or 504, or when no
+ * connection could be made. The wait grows exponentially with each attempt, and a random share of it is used so that
+ * clients that failed together do not retry together. A Retry-After header sets the least time to wait. Retries are
+ * paid for from a budget that every request adds a fraction of a retry to, so that when ElasticSearch is failing the
+ * retries add at most that fraction to the load on it.
+ */
+@Named
+public class RetryPolicy {
+
+    private final ConfigurationInfo.Retry settings;
+    private final Counter retried;
+    private final Counter attemptsExhausted;
+    private final Counter budgetExhausted;
+    private final Counter retryAfterTooLong;
+
+    private double budget;
+
+    @Inject
+    public RetryPolicy(final ConfigurationInfo configurationInfo, final MeterRegistry meterRegistry) {
+        this.settings = configurationInfo.getRetry();
+        this.budget = settings.getBudgetBurst();
+        this.retried = retries(meterRegistry, "retried");
+        this.attemptsExhausted = retries(meterRegistry, "attempts_exhausted");
+        this.budgetExhausted = retries(meterRegistry, "budget_exhausted");
+        this.retryAfterTooLong = retries(meterRegistry, "retry_after_too_long");
+    }
+
+    private static Counter retries(final MeterRegistry meterRegistry, final String outcome) {
+        return Counter.builder("elasticsearch.retries")
+                .description("Failed requests to ElasticSearch by whether they were retried, or why not")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param request The Request
+     * @return True when sending the request twice has the same effect as sending it once
+     */
+    public static boolean isIdempotent(final Request<?> request) {
+        // A search that opens a scroll would open a second scroll context, and leave the first open until it expires
+        if (request.getParameters().containsKey("scroll")) {
+            return false;
+        }
+        if (request.getHttpMethod() != HttpMethodName.POST) {
+            return true;
+        }
+        // A scroll moves on with every request, an _update may run a script, and a point in time is opened anew
+        final String path = request.getEndpoint().getPath();
+        return path.endsWith(ElasticSearchConstants.SEARCH_API) || path.endsWith(ElasticSearchConstants.MULTI_SEARCH_API)
+                || path.endsWith(ElasticSearchConstants.BULK_API);
+    }
+
+    /**
+     * @param e The failure
+     * @return True when the failure shows ElasticSearch is throttling or unhealthy, rather than the request being wrong
+     */
+    public static boolean isRetryable(final SdkClientException e) {
+        if (e instanceof AmazonServiceException) {
+            final int status = ((AmazonServiceException) e).getStatusCode();
+            return status == 429 || status == 502 || status == 503 || status == 504;
+        }
+        return e.getCause() instanceof IOException;
+    }
+
+    /**
+     * @param e The failure
+     * @return The wait asked for by a Retry-After header, in seconds or as a date, or -1 when there is none
+     */
+    public static long retryAfterMillis(final SdkClientException e) {
+        if (!(e instanceof AmazonServiceException) || ((AmazonServiceException) e).getHttpHeaders() == null) {
+            return -1;
+        }
+        for (final Map.Entry<String, String> header : ((AmazonServiceException) e).getHttpHeaders().entrySet()) {
+            if ("Retry-After".equalsIgnoreCase(header.getKey()) && header.getValue() != null) {
+                return parseRetryAfter(header.getValue().trim());
+            }
+        }
+        return -1;
+    }
+
+    private static long parseRetryAfter(final String value) {
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        } catch (NumberFormatException e) {
+            try {
+                final ZonedDateTime date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, Duration.between(ZonedDateTime.now(date.getZone()), date).toMillis());
+            } catch (DateTimeParseException unparseable) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Add this request's share of a retry to the budget
+     */
+    public synchronized void onRequest() {
+        budget = Math.min(budget + settings.getBudgetRatio(), Math.max(settings.getBudgetBurst(), 1));
+    }
+
+    /**
+     * Decide whether to send a failed request again, and take the retry from the budget when it is
+     *
+     * @param attempt The number of the attempt that failed, starting at 1
+     * @param retryAfterMillis The wait asked for by ElasticSearch, or -1
+     * @return True when the request is to be sent again
+     */
+    public boolean shouldRetry(final int attempt, final long retryAfterMillis) {
+        if (!settings.isEnabled() || attempt >= settings.getMaxAttempts()) {
+            attemptsExhausted.increment();
+            return false;
+        }
+        if (retryAfterMillis > settings.getMaxRetryAfterMillis()) {
+            retryAfterTooLong.increment();
+            return false;
+        }
+        synchronized (this) {
+            if (budget < 1) {
+                budgetExhausted.increment();
+                return false;
+            }
+            budget--;
+        }
+        retried.increment();
+        return true;
+    }
+
+    /**
+     * @param attempt The number of the attempt that failed, starting at 1
+     * @param retryAfterMillis The wait asked for by ElasticSearch, or -1
+     * @return The time to wait before the next attempt, a random time up to the exponential backoff, and at least
+     * the wait asked for
+     */
+    public long delayMillis(final int attempt, final long retryAfterMillis) {
+        final long backoff = Math.min(settings.getMaxDelayMillis(),
+                settings.getBaseDelayMillis() << Math.min(attempt - 1, 30));
+        final long jittered = ThreadLocalRandom.current().nextLong(backoff + 1);
+        return Math.max(jittered, retryAfterMillis);
+    }
+}
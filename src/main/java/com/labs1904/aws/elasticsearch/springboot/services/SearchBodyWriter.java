@@ -0,0 +1,606 @@
+package com.labs1904.aws.elasticsearch.springboot.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.labs1904.aws.elasticsearch.springboot.models.Facet;
+import com.labs1904.aws.elasticsearch.springboot.models.MovieQuery;
+import com.labs1904.aws.elasticsearch.springboot.models.SourceFilter;
+import com.labs1904.aws.elasticsearch.springboot.util.StringUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writes the body of a search request straight to UTF-8 bytes.
+ *
+ * Every thread reuses one buffer and one JsonGenerator, and all field names are encoded once up front, so building a
+ * query allocates little more than the final copy of the body. A writer builds one body at a time: start it with
+ * match() or fuzzy(), add the optional parts, and take the body with toBytes().
+ */
+public class SearchBodyWriter {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final ThreadLocal<SearchBodyWriter> WRITERS = ThreadLocal.withInitial(SearchBodyWriter::new);
+
+    private static final SerializableString QUERY = new SerializedString("query");
+    private static final SerializableString BOOL = new SerializedString("bool");
+    private static final SerializableString MUST = new SerializedString("must");
+    private static final SerializableString FILTER = new SerializedString("filter");
+    private static final SerializableString SHOULD = new SerializedString("should");
+    private static final SerializableString MATCH = new SerializedString("match");
+    private static final SerializableString TERM = new SerializedString("term");
+    private static final SerializableString TERMS = new SerializedString("terms");
+    private static final SerializableString RANGE = new SerializedString("range");
+    private static final SerializableString GTE = new SerializedString("gte");
+    private static final SerializableString LTE = new SerializedString("lte");
+    private static final SerializableString AGGS = new SerializedString("aggs");
+    private static final SerializableString HISTOGRAM = new SerializedString("histogram");
+    private static final SerializableString FIELD = new SerializedString("field");
+    private static final SerializableString INTERVAL = new SerializedString("interval");
+    private static final SerializableString MIN_DOC_COUNT = new SerializedString("min_doc_count");
+    private static final SerializableString RANGES = new SerializedString("ranges");
+    private static final SerializableString TO = new SerializedString("to");
+    private static final SerializableString FUZZY = new SerializedString("fuzzy");
+    private static final SerializableString SOURCE = new SerializedString("_source");
+    private static final SerializableString INCLUDES = new SerializedString("includes");
+    private static final SerializableString EXCLUDES = new SerializedString("excludes");
+    private static final SerializableString FROM = new SerializedString("from");
+    private static final SerializableString SIZE = new SerializedString("size");
+    private static final SerializableString SORT = new SerializedString("sort");
+    private static final SerializableString SEARCH_AFTER = new SerializedString("search_after");
+    private static final SerializableString PIT = new SerializedString("pit");
+    private static final SerializableString KEEP_ALIVE = new SerializedString("keep_alive");
+    private static final SerializableString VALUE = new SerializedString("value");
+    private static final SerializableString BOOST = new SerializedString("boost");
+    private static final SerializableString FUZZINESS = new SerializedString("fuzziness");
+    private static final SerializableString PREFIX_LENGTH = new SerializedString("prefix_length");
+    private static final SerializableString MAX_EXPANSIONS = new SerializedString("max_expansions");
+
+    private static final SerializableString ID = new SerializedString("id");
+    private static final SerializableString TITLE = new SerializedString("title");
+    private static final SerializableString YEAR = new SerializedString("year");
+    private static final SerializableString GENRE = new SerializedString("genre");
+    private static final SerializableString MPAA_RATING = new SerializedString("mpaaRating");
+    private static final SerializableString IMDB_URL = new SerializedString("imdbUrl");
+    private static final SerializableString LANGUAGE = new SerializedString("language");
+    private static final SerializableString COUNTRY = new SerializedString("country");
+    private static final SerializableString STAR_RATING = new SerializedString("starRating");
+    private static final SerializableString DURATION = new SerializedString("duration");
+    private static final SerializableString STORYLINE = new SerializedString("storyline");
+    private static final SerializableString SYNOPSIS = new SerializedString("synopsis");
+
+    private static final int YEARS_PER_DECADE = 10;
+
+    // Hits are sorted by score, with the document id as the tiebreaker so the order is stable between pages
+    private static final SerializableString SCORE_THEN_ID = new SerializedString("[{\"_score\":\"desc\"},{\"id\":\"asc\"}]");
+
+    private final ByteArrayBuilder buffer = new ByteArrayBuilder(1024);
+    private final JsonGenerator generator;
+
+    private SearchBodyWriter() {
+        try {
+            generator = OBJECT_MAPPER.getFactory().createGenerator(buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        generator.setRootValueSeparator(null);
+    }
+
+    /**
+     * Start a body with a bool query, that must match every field set in the MovieQuery. Only the free text fields are
+     * scored, the exact match fields are filters, which ElasticSearch can cache and reuse between searches.
+     *
+     * @param movieQuery The MovieQuery
+     * @param keywordFields The fields known to be mapped as keywords, matched with term filters. Other exact match
+     *                      fields are matched with match queries, which also work on analyzed text fields.
+     * @return The writer
+     */
+    public static SearchBodyWriter match(final MovieQuery movieQuery, final Set<String> keywordFields) {
+        final SearchBodyWriter writer = start();
+        try {
+            writer.writeMatchQuery(movieQuery, keywordFields);
+        } catch (IOException e) {
+            throw writer.failed(e);
+        }
+        return writer;
+    }
+
+    /**
+     * Start a body with a fuzzy query on the storyline and synopsis of the MovieQuery
+     *
+     * @param movieQuery The MovieQuery
+     * @return The writer
+     */
+    public static SearchBodyWriter fuzzy(final MovieQuery movieQuery) {
+        final SearchBodyWriter writer = start();
+        try {
+            writer.writeFuzzyQuery(movieQuery);
+        } catch (IOException e) {
+            throw writer.failed(e);
+        }
+        return writer;
+    }
+
+    /**
+     * @param filterValues Optional list of values to filter the response by, left out when null
+     * @return The writer
+     */
+    public SearchBodyWriter source(final Set<String> filterValues) {
+        if (filterValues == null) {
+            return this;
+        }
+        try {
+            generator.writeFieldName(SOURCE);
+            writeStrings(filterValues);
+        } catch (IOException e) {
+            throw failed(e);
+        }
+        return this;
+    }
+
+    /**
+     * @param sourceFilter Optional fields to include in and exclude from the response, left out when null or empty
+     * @return The writer
+     */
+    public SearchBodyWriter source(final SourceFilter sourceFilter) {
+        if (sourceFilter == null || sourceFilter.isEmpty()) {
+            return this;
+        }
+        if (sourceFilter.getExcludes().isEmpty()) {
+            return source(sourceFilter.getIncludes());
+        }
+        try {
+            generator.writeFieldName(SOURCE);
+            generator.writeStartObject();
+            if (!sourceFilter.getIncludes().isEmpty()) {
+                generator.writeFieldName(INCLUDES);
+                writeStrings(sourceFilter.getIncludes());
+            }
+            generator.writeFieldName(EXCLUDES);
+            writeStrings(sourceFilter.getExcludes());
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw failed(e);
+        }
+        return this;
+    }
+
+    public SearchBodyWriter from(final int from) {
+        return number(FROM, from);
+    }
+
+    public SearchBodyWriter size(final int size) {
+        return number(SIZE, size);
+    }
+
+    /**
+     * Sort by score, and then by document id
+     *
+     * @return The writer
+     */
+    public SearchBodyWriter sortByScoreThenId() {
+        try {
+            generator.writeFieldName(SORT);
+            generator.writeRawValue(SCORE_THEN_ID);
+        } catch (IOException e) {
+            throw failed(e);
+        }
+        return this;
+    }
+
+    /**
+     * @param after The sort values of the last hit of the previous page
+     * @return The writer
+     */
+    public SearchBodyWriter searchAfter(final List<Object> after) {
+        try {
+            generator.writeFieldName(SEARCH_AFTER);
+            generator.writeObject(after);
+        } catch (IOException e) {
+            throw failed(e);
+        }
+        return this;
+    }
+
+    /**
+     * @param id The point in time id
+     * @param keepAlive How long to keep the point in time open
+     * @return The writer
+     */
+    public SearchBodyWriter pointInTime(final String id, final String keepAlive) {
+        try {
+            generator.writeFieldName(PIT);
+            generator.writeStartObject();
+            generator.writeFieldName(ID);
+            generator.writeString(id);
+            generator.writeFieldName(KEEP_ALIVE);
+            generator.writeString(keepAlive);
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw failed(e);
+        }
+        return this;
+    }
+
+    /**
+     * Count the matching Movies by each facet. Text facets count the most common values, the decade facet counts every
+     * decade with at least one Movie, and the starRating facet counts the Movies between each pair of bounds.
+     *
+     * @param facets The facets to count
+     * @param maxTerms The number of values to count of each text facet
+     * @param starRatingRanges The bounds of the starRating buckets, in ascending order
+     * @return The writer
+     */
+    public SearchBodyWriter aggregations(final Collection<Facet> facets, final int maxTerms,
+                                         final List<Double> starRatingRanges) {
+        try {
+            generator.writeFieldName(AGGS);
+            generator.writeStartObject();
+            for (Facet facet : facets) {
+                generator.writeFieldName(facet.getName());
+                generator.writeStartObject();
+                switch (facet) {
+                    case DECADE:
+                        generator.writeFieldName(HISTOGRAM);
+                        generator.writeStartObject();
+                        generator.writeFieldName(FIELD);
+                        generator.writeString(facet.getField());
+                        generator.writeFieldName(INTERVAL);
+                        generator.writeNumber(YEARS_PER_DECADE);
+                        generator.writeFieldName(MIN_DOC_COUNT);
+                        generator.writeNumber(1);
+                        generator.writeEndObject();
+                        break;
+                    case STAR_RATING:
+                        generator.writeFieldName(RANGE);
+                        generator.writeStartObject();
+                        generator.writeFieldName(FIELD);
+                        generator.writeString(facet.getField());
+                        writeRanges(starRatingRanges);
+                        generator.writeEndObject();
+                        break;
+                    default:
+                        generator.writeFieldName(TERMS);
+                        generator.writeStartObject();
+                        generator.writeFieldName(FIELD);
+                        generator.writeString(facet.getField());
+                        generator.writeFieldName(SIZE);
+                        generator.writeNumber(maxTerms);
+                        generator.writeEndObject();
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw failed(e);
+        }
+        return this;
+    }
+
+    /**
+     * Finish the body, and free the writer for the next body on this thread
+     *
+     * @return The UTF-8 encoded body
+     */
+    public byte[] toBytes() {
+        try {
+            generator.writeEndObject();
+            generator.flush();
+            return buffer.toByteArray();
+        } catch (IOException e) {
+            throw failed(e);
+        } finally {
+            buffer.reset();
+        }
+    }
+
+    private static SearchBodyWriter start() {
+        SearchBodyWriter writer = WRITERS.get();
+        // A body that was never finished leaves the generator inside it, so start over with a new writer
+        if (!writer.generator.getOutputContext().inRoot()) {
+            writer = new SearchBodyWriter();
+            WRITERS.set(writer);
+        }
+        writer.buffer.reset();
+        try {
+            writer.generator.writeStartObject();
+        } catch (IOException e) {
+            throw writer.failed(e);
+        }
+        return writer;
+    }
+
+    private void writeStrings(final Collection<String> values) throws IOException {
+        generator.writeStartArray();
+        for (String value : values) {
+            generator.writeString(value);
+        }
+        generator.writeEndArray();
+    }
+
+    /**
+     * Write the ranges between each pair of bounds, with an open range below the first bound and above the last
+     */
+    private void writeRanges(final List<Double> bounds) throws IOException {
+        generator.writeFieldName(RANGES);
+        generator.writeStartArray();
+        Double from = null;
+        for (Double to : bounds) {
+            writeRange(from, to);
+            from = to;
+        }
+        writeRange(from, null);
+        generator.writeEndArray();
+    }
+
+    private void writeRange(final Double from, final Double to) throws IOException {
+        generator.writeStartObject();
+        if (from != null) {
+            generator.writeFieldName(FROM);
+            generator.writeNumber(from);
+        }
+        if (to != null) {
+            generator.writeFieldName(TO);
+            generator.writeNumber(to);
+        }
+        generator.writeEndObject();
+    }
+
+    private SearchBodyWriter number(final SerializableString field, final int value) {
+        try {
+            generator.writeFieldName(field);
+            generator.writeNumber(value);
+        } catch (IOException e) {
+            throw failed(e);
+        }
+        return this;
+    }
+
+    /**
+     * Write the query of every free text field set in the MovieQuery as a scored 'must' statement, and of every exact
+     * match field and range as a 'filter' statement. Text is trimmed, as it is in the SearchResultCache key: on a keyword
+     * field a trailing space would otherwise match other documents than the cached result was read for.
+     */
+    private void writeMatchQuery(final MovieQuery movieQuery, final Set<String> keywordFields) throws IOException {
+        generator.writeFieldName(QUERY);
+        generator.writeStartObject();
+        generator.writeFieldName(BOOL);
+        generator.writeStartObject();
+        generator.writeFieldName(MUST);
+        generator.writeStartArray();
+
+        if (StringUtils.checkNullOrEmpty(movieQuery.getTitle())) {
+            writeMatchStatement(TITLE, movieQuery.getTitle().trim());
+        }
+        if (StringUtils.checkNullOrEmpty(movieQuery.getStoryline())) {
+            writeMatchStatement(STORYLINE, movieQuery.getStoryline().trim());
+        }
+        if (StringUtils.checkNullOrEmpty(movieQuery.getSynopsis())) {
+            writeMatchStatement(SYNOPSIS, movieQuery.getSynopsis().trim());
+        }
+        generator.writeEndArray();
+
+        if (hasFilters(movieQuery)) {
+            generator.writeFieldName(FILTER);
+            generator.writeStartArray();
+            if (movieQuery.getId() != null) {
+                writeTermStatement(ID, movieQuery.getId());
+            }
+            if (movieQuery.getYear() > 0) {
+                writeTermStatement(YEAR, movieQuery.getYear());
+            }
+            if (movieQuery.getGenre() != null && !movieQuery.getGenre().isEmpty()) {
+                writeAnyOfStatement(GENRE, movieQuery.getGenre(), keywordFields);
+            }
+            if (StringUtils.checkNullOrEmpty(movieQuery.getMpaaRating())) {
+                writeExactStatement(MPAA_RATING, movieQuery.getMpaaRating().trim(), keywordFields);
+            }
+            if (StringUtils.checkNullOrEmpty(movieQuery.getImdbUrl())) {
+                writeExactStatement(IMDB_URL, movieQuery.getImdbUrl().trim(), keywordFields);
+            }
+            if (StringUtils.checkNullOrEmpty(movieQuery.getLanguage())) {
+                writeExactStatement(LANGUAGE, movieQuery.getLanguage().trim(), keywordFields);
+            }
+            if (StringUtils.checkNullOrEmpty(movieQuery.getCountry())) {
+                writeExactStatement(COUNTRY, movieQuery.getCountry().trim(), keywordFields);
+            }
+            if (movieQuery.getMinYear() != null || movieQuery.getMaxYear() != null) {
+                writeRangeStatement(YEAR, movieQuery.getMinYear(), movieQuery.getMaxYear());
+            }
+            if (movieQuery.getMinStarRating() != null || movieQuery.getMaxStarRating() != null) {
+                writeRangeStatement(STAR_RATING, movieQuery.getMinStarRating(), movieQuery.getMaxStarRating());
+            }
+            if (movieQuery.getMinDuration() != null || movieQuery.getMaxDuration() != null) {
+                writeRangeStatement(DURATION, movieQuery.getMinDuration(), movieQuery.getMaxDuration());
+            }
+            generator.writeEndArray();
+        }
+
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+
+    private static boolean hasFilters(final MovieQuery movieQuery) {
+        return movieQuery.getId() != null || movieQuery.getYear() > 0
+                || (movieQuery.getGenre() != null && !movieQuery.getGenre().isEmpty())
+                || StringUtils.checkNullOrEmpty(movieQuery.getMpaaRating())
+                || StringUtils.checkNullOrEmpty(movieQuery.getImdbUrl())
+                || StringUtils.checkNullOrEmpty(movieQuery.getLanguage())
+                || StringUtils.checkNullOrEmpty(movieQuery.getCountry())
+                || movieQuery.getMinYear() != null || movieQuery.getMaxYear() != null
+                || movieQuery.getMinStarRating() != null || movieQuery.getMaxStarRating() != null
+                || movieQuery.getMinDuration() != null || movieQuery.getMaxDuration() != null;
+    }
+
+    /**
+     * Write a fuzzy search clause for the storyline and synopsis of the MovieQuery
+     */
+    private void writeFuzzyQuery(final MovieQuery movieQuery) throws IOException {
+        generator.writeFieldName(QUERY);
+        generator.writeStartObject();
+        generator.writeFieldName(FUZZY);
+        generator.writeStartObject();
+        if (StringUtils.checkNullOrEmpty(movieQuery.getStoryline())) {
+            writeFuzzyStatement(STORYLINE, movieQuery.getStoryline().trim());
+        }
+        if (StringUtils.checkNullOrEmpty(movieQuery.getSynopsis())) {
+            writeFuzzyStatement(SYNOPSIS, movieQuery.getSynopsis().trim());
+        }
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+
+    /**
+     * Write a 'term' statement for a keyword field, or a 'match' statement for a field that may still be analyzed text,
+     * where a term would have to equal one of the tokens and so would miss most values
+     */
+    private void writeExactStatement(final SerializableString field, final Object value,
+                                     final Set<String> keywordFields) throws IOException {
+        if (keywordFields.contains(field.getValue())) {
+            writeTermStatement(field, value);
+        } else {
+            writeMatchStatement(field, value);
+        }
+    }
+
+    /**
+     * Write a 'terms' statement for a keyword field, or for a field that may still be analyzed text, a 'bool' statement
+     * that should match any of the values. Both match documents with any of the values.
+     */
+    private void writeAnyOfStatement(final SerializableString field, final Collection<?> values,
+                                     final Set<String> keywordFields) throws IOException {
+        if (keywordFields.contains(field.getValue())) {
+            writeTermsStatement(field, values);
+            return;
+        }
+        if (values.size() == 1) {
+            writeMatchStatement(field, values.iterator().next());
+            return;
+        }
+        generator.writeStartObject();
+        generator.writeFieldName(BOOL);
+        generator.writeStartObject();
+        generator.writeFieldName(SHOULD);
+        generator.writeStartArray();
+        for (Object value : values) {
+            writeMatchStatement(field, value);
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+
+    /**
+     * Write an ElasticSearch 'terms' statement, or a single 'term' statement when there is only one value. Matches
+     * documents with any of the values.
+     */
+    private void writeTermsStatement(final SerializableString field, final Collection<?> values) throws IOException {
+        if (values.size() == 1) {
+            writeTermStatement(field, values.iterator().next());
+            return;
+        }
+        generator.writeStartObject();
+        generator.writeFieldName(TERMS);
+        generator.writeStartObject();
+        generator.writeFieldName(field);
+        generator.writeStartArray();
+        for (Object value : values) {
+            writeValue(value);
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+
+    /**
+     * Write an ElasticSearch 'term' statement, which matches the exact value. Keyword fields with a normalizer apply it
+     * to the value as well.
+     */
+    private void writeTermStatement(final SerializableString field, final Object value) throws IOException {
+        generator.writeStartObject();
+        generator.writeFieldName(TERM);
+        generator.writeStartObject();
+        generator.writeFieldName(field);
+        writeValue(value);
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+
+    /**
+     * Write an ElasticSearch 'range' statement. Either bound may be null, and both bounds are inclusive.
+     */
+    private void writeRangeStatement(final SerializableString field, final Object min, final Object max) throws IOException {
+        generator.writeStartObject();
+        generator.writeFieldName(RANGE);
+        generator.writeStartObject();
+        generator.writeFieldName(field);
+        generator.writeStartObject();
+        if (min != null) {
+            generator.writeFieldName(GTE);
+            writeValue(min);
+        }
+        if (max != null) {
+            generator.writeFieldName(LTE);
+            writeValue(max);
+        }
+        generator.writeEndObject();
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+
+    /**
+     * Write an ElasticSearch 'match' statement, which scores documents by how well the analyzed text matches, or in
+     * filter context only matches them
+     */
+    private void writeMatchStatement(final SerializableString field, final Object value) throws IOException {
+        generator.writeStartObject();
+        generator.writeFieldName(MATCH);
+        generator.writeStartObject();
+        generator.writeFieldName(field);
+        writeValue(value);
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+
+    private void writeValue(final Object value) throws IOException {
+        if (value instanceof String) {
+            generator.writeString((String) value);
+        } else if (value instanceof Long) {
+            generator.writeNumber((Long) value);
+        } else if (value instanceof Double) {
+            generator.writeNumber((Double) value);
+        } else {
+            generator.writeObject(value);
+        }
+    }
+
+    private void writeFuzzyStatement(final SerializableString field, final String value) throws IOException {
+        generator.writeFieldName(field);
+        generator.writeStartObject();
+        generator.writeFieldName(VALUE);
+        generator.writeString(value);
+        generator.writeFieldName(BOOST);
+        generator.writeNumber(1.0);
+        generator.writeFieldName(FUZZINESS);
+        generator.writeNumber(50);
+        generator.writeFieldName(PREFIX_LENGTH);
+        generator.writeNumber(0);
+        generator.writeFieldName(MAX_EXPANSIONS);
+        generator.writeNumber(100);
+        generator.writeEndObject();
+    }
+
+    /**
+     * Drop the buffered output of a body that could not be written
+     */
+    private UncheckedIOException failed(final IOException e) {
+        buffer.reset();
+        return new UncheckedIOException("Failed to write the search request body", e);
+    }
+}
@@ -0,0 +1,213 @@
+package com.labs1904.aws.elasticsearch.springboot.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.labs1904.aws.elasticsearch.springboot.config.ConfigurationInfo;
+import com.labs1904.aws.elasticsearch.springboot.models.Facet;
+import com.labs1904.aws.elasticsearch.springboot.models.MovieQuery;
+import com.labs1904.aws.elasticsearch.springboot.models.SearchCursor;
+import com.labs1904.aws.elasticsearch.springboot.models.SourceFilter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process cache of search results, keyed on the normalized query.
+ *
+ * Entries are evicted by Caffeine's TinyLFU policy once the cached results reach the configured number of bytes, and
+ * expire a fixed time after they were written. Any write to an index drops every cached result of that index, since a
+ * new or changed document can match any query. Results of searches that started within the refresh grace period after
+ * a write are not cached, as ElasticSearch may not have made the write visible to them yet.
+ */
+@Named
+public class SearchResultCache {
+
+    public enum SearchType {
+        MATCH, FUZZY, FACETS
+    }
+
+    private final ConfigurationInfo configurationInfo;
+    private final ConfigurationInfo.Cache settings;
+    private final Cache<Key, byte[]> cache;
+    private final Map<String, Long> lastWrites = new ConcurrentHashMap<>();
+
+    @Inject
+    public SearchResultCache(final ConfigurationInfo configurationInfo, final MeterRegistry meterRegistry) {
+        this.configurationInfo = configurationInfo;
+        this.settings = configurationInfo.getCache();
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(settings.getMaxBytes())
+                .weigher((Key key, byte[] value) -> key.weight + value.length)
+                .expireAfterWrite(settings.getTtlMillis(), TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "elasticsearch.search");
+        Gauge.builder("elasticsearch.search.cache.hit.ratio", cache, c -> c.stats().hitRate())
+                .description("Share of searches answered from the result cache")
+                .register(meterRegistry);
+        Gauge.builder("elasticsearch.search.cache.miss.ratio", cache, c -> c.stats().missRate())
+                .description("Share of searches sent to ElasticSearch")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Build the key of a search for a range of results. The key also identifies identical searches that are in flight
+     * at the same time, so it is built even when the cache is disabled.
+     *
+     * @return The key
+     */
+    public Key key(final SearchType type, final String index, final int from, final int size,
+                   final SourceFilter sourceFilter, final MovieQuery movieQuery) {
+        return new Key(type, index, from, size, null, sourceFilter, movieQuery);
+    }
+
+    /**
+     * Build the key of a search for one page of results. Pages read from a point in time are never cached, as the
+     * cursor of a cached page would point to a point in time that has since expired.
+     *
+     * @return The key, or null when the result must not be cached or shared
+     */
+    public Key pageKey(final SearchType type, final String index, final int size, final SearchCursor cursor,
+                       final SourceFilter sourceFilter, final MovieQuery movieQuery) {
+        if (configurationInfo.getSearch().isPointInTime()) {
+            return null;
+        }
+        return new Key(type, index, 0, size, cursor != null ? cursor.getAfter() : null, sourceFilter, movieQuery);
+    }
+
+    /**
+     * Build the key of the facet counts of a search. Facet counts are kept by the FacetCache rather than here.
+     *
+     * @return The key
+     */
+    public Key facetKey(final String index, final Set<Facet> facets, final MovieQuery movieQuery) {
+        final Set<Facet> ordered = facets.isEmpty() ? EnumSet.noneOf(Facet.class) : EnumSet.copyOf(facets);
+        return new Key(index, Arrays.asList(SearchType.FACETS, index, ordered, Key.matchParts(movieQuery)));
+    }
+
+    /**
+     * @param key The key, may be null
+     * @return The cached result, or null
+     */
+    public byte[] get(final Key key) {
+        return key != null && settings.isEnabled() ? cache.getIfPresent(key) : null;
+    }
+
+    /**
+     * Cache a result, unless the index was written to shortly before or while the search was running
+     *
+     * @param key The key, may be null
+     * @param value The result, not cached when null or larger than the maximum entry size
+     * @param startedNanos The System.nanoTime() at which the search was sent
+     */
+    public void put(final Key key, final byte[] value, final long startedNanos) {
+        if (!settings.isEnabled() || key == null || value == null || value.length > settings.getMaxEntryBytes()) {
+            return;
+        }
+        final Long lastWrite = lastWrites.get(key.index);
+        if (lastWrite != null
+                && startedNanos - lastWrite < TimeUnit.MILLISECONDS.toNanos(settings.getRefreshGraceMillis())) {
+            return;
+        }
+        cache.put(key, value);
+    }
+
+    /**
+     * Drop every cached result of the index
+     *
+     * @param index The index that was written to
+     */
+    public void invalidate(final String index) {
+        lastWrites.put(index, System.nanoTime());
+        cache.asMap().keySet().removeIf(key -> key.index.equals(index));
+    }
+
+    public int getMaxEntryBytes() {
+        return settings.getMaxEntryBytes();
+    }
+
+    /**
+     * The normalized form of a search. Only the fields of the MovieQuery that are part of the ElasticSearch query are
+     * kept, text is trimmed, and sets are put in order, so that equivalent searches share a cache entry.
+     */
+    public static final class Key {
+        private final String index;
+        private final List<Object> parts;
+        private final int hash;
+        private final int weight;
+
+        private Key(final String index, final List<Object> parts) {
+            this.index = index;
+            this.parts = parts;
+            this.hash = parts.hashCode();
+            // Rough size of the key in memory, two bytes per character of its parts
+            this.weight = parts.toString().length() * 2;
+        }
+
+        private Key(final SearchType type, final String index, final int from, final int size, final List<Object> after,
+                    final SourceFilter sourceFilter, final MovieQuery query) {
+            this(index, type == SearchType.FUZZY
+                    ? Arrays.asList(type, index, from, size, after, includes(sourceFilter), excludes(sourceFilter),
+                            text(query.getStoryline()), text(query.getSynopsis()))
+                    : Arrays.asList(type, index, from, size, after, includes(sourceFilter), excludes(sourceFilter),
+                            matchParts(query)));
+        }
+
+        private static List<Object> matchParts(final MovieQuery query) {
+            return Arrays.asList(query.getId(), text(query.getTitle()), query.getYear() > 0 ? query.getYear() : null,
+                    sorted(query.getGenre()), text(query.getMpaaRating()), text(query.getImdbUrl()),
+                    text(query.getLanguage()), text(query.getCountry()), text(query.getStoryline()),
+                    text(query.getSynopsis()), query.getMinYear(), query.getMaxYear(), query.getMinStarRating(),
+                    query.getMaxStarRating(), query.getMinDuration(), query.getMaxDuration());
+        }
+
+        private static String text(final String value) {
+            // Empty values are left out of the query, blank values are not. SearchBodyWriter sends the trimmed value too.
+            return value == null || value.isEmpty() ? null : value.trim();
+        }
+
+        private static Set<String> includes(final SourceFilter sourceFilter) {
+            return sourceFilter != null ? sorted(sourceFilter.getIncludes()) : null;
+        }
+
+        private static Set<String> excludes(final SourceFilter sourceFilter) {
+            return sourceFilter != null ? sorted(sourceFilter.getExcludes()) : null;
+        }
+
+        private static Set<String> sorted(final Set<String> values) {
+            if (values == null) {
+                return null;
+            }
+            return new TreeSet<>(values);
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) other;
+            return hash == key.hash && parts.equals(key.parts);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.labs1904.aws.elasticsearch.springboot.services;
+
+import com.labs1904.aws.elasticsearch.springboot.config.ConfigurationInfo;
+import com.labs1904.aws.elasticsearch.springboot.exceptions.QueueFullException;
+import com.labs1904.aws.elasticsearch.springboot.models.BulkItemResult;
+import com.labs1904.aws.elasticsearch.springboot.models.BulkOperation;
+import com.labs1904.aws.elasticsearch.springboot.models.BulkResult;
+import com.labs1904.aws.elasticsearch.springboot.models.WriteStatus;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Accepts creates and updates into a bounded in-memory queue, and writes them to ElasticSearch in the background with
+ * the _bulk API. A batch is flushed once it reaches the configured batch size, or once the flush interval has passed
+ * since its first write, whichever comes first.
+ */
+@Named
+public class WriteBehindQueue {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WriteBehindQueue.class);
+
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 30_000;
+
+    private final ConfigurationInfo.WriteBehind settings;
+    private final ElasticSearchService elasticSearchService;
+    private final BlockingQueue<QueuedWrite> queue;
+    private final Map<String, TrackedStatus> statuses;
+    // Numbers every accepted write, so that the result of an older write of a document never hides a newer one
+    private final AtomicLong sequence = new AtomicLong();
+
+    private volatile boolean running;
+    private Thread flusher;
+
+    @Inject
+    public WriteBehindQueue(final ConfigurationInfo configurationInfo, final ElasticSearchService elasticSearchService,
+                            final MeterRegistry meterRegistry) {
+        this.settings = configurationInfo.getWriteBehind();
+        this.elasticSearchService = elasticSearchService;
+        this.queue = new ArrayBlockingQueue<>(settings.getCapacity());
+        final int retention = settings.getStatusRetention();
+        // Only the most recent writes are tracked, the oldest status is dropped once the retention is reached
+        this.statuses = Collections.synchronizedMap(new LinkedHashMap<String, TrackedStatus>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TrackedStatus> eldest) {
+                return size() > retention;
+            }
+        });
+
+        Gauge.builder("elasticsearch.writebehind.queue.size", queue, BlockingQueue::size)
+                .description("Writes accepted but not yet sent to ElasticSearch")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        running = true;
+        flusher = new Thread(this::flushLoop, "es-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Stop accepting writes, and flush everything that is already queued
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (flusher == null) {
+            return;
+        }
+        running = false;
+        flusher.join(SHUTDOWN_TIMEOUT_MILLIS);
+        if (!queue.isEmpty()) {
+            LOGGER.warn("Dropped {} queued writes on shutdown.", queue.size());
+        }
+    }
+
+    public boolean isEnabled() {
+        return settings.isEnabled();
+    }
+
+    /**
+     * Accept a write into the queue. When the queue is full the write is either rejected immediately, or the caller
+     * waits up to the configured block timeout for space, depending on the configured backpressure.
+     *
+     * @param operation The write
+     * @throws QueueFullException Throws QueueFullException when there is no space in the queue for the write
+     * @throws InterruptedException Throws InterruptedException when interrupted while waiting for space
+     */
+    public void submit(final BulkOperation operation) throws QueueFullException, InterruptedException {
+        if (!running) {
+            throw new QueueFullException("Write-behind queue is not accepting writes");
+        }
+        if (operation.getId() == null) {
+            throw new IllegalArgumentException("A Movie id is required");
+        }
+        final QueuedWrite write = new QueuedWrite(sequence.incrementAndGet(), operation);
+        final TrackedStatus pending = new TrackedStatus(write.sequence,
+                new WriteStatus(operation.getId(), WriteStatus.State.PENDING, null));
+        final TrackedStatus previous = statuses.put(operation.getId(), pending);
+
+        final boolean accepted = settings.getBackpressure() == ConfigurationInfo.WriteBehind.Backpressure.BLOCK
+                ? queue.offer(write, settings.getBlockTimeoutMillis(), TimeUnit.MILLISECONDS)
+                : queue.offer(write);
+        if (!accepted) {
+            // Unless a newer write of the document was accepted while this one waited for space
+            if (previous != null) {
+                statuses.replace(operation.getId(), pending, previous);
+            } else {
+                statuses.remove(operation.getId(), pending);
+            }
+            throw new QueueFullException("Write-behind queue is full, try again later");
+        }
+    }
+
+    /**
+     * Get the status of the most recent write of a document
+     *
+     * @param id The document ID
+     * @return The status, or null when no recent write of the document is known. It stays PENDING until the most recent
+     * write has been sent, even when earlier writes of the document already were.
+     */
+    public WriteStatus getStatus(final String id) {
+        final TrackedStatus tracked = statuses.get(id);
+        return tracked != null ? tracked.status : null;
+    }
+
+    private void flushLoop() {
+        final int batchSize = settings.getBatchSize();
+        final long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(settings.getFlushIntervalMillis());
+        final List<QueuedWrite> batch = new ArrayList<>(batchSize);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                final QueuedWrite first = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                final long deadline = System.nanoTime() + flushIntervalNanos;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    final long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    final QueuedWrite next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                LOGGER.error("Failed to flush write-behind batch.", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(final List<QueuedWrite> batch) {
+        final List<BulkOperation> operations = new ArrayList<>(batch.size());
+        final Set<String> ids = new HashSet<>();
+        boolean repeated = false;
+        for (QueuedWrite write : batch) {
+            operations.add(write.operation);
+            repeated |= !ids.add(write.operation.getId());
+        }
+        // A large batch is sent in several chunks, and a document written twice must not have its writes reordered
+        final BulkResult result = elasticSearchService.bulk(operations, repeated);
+        // The results are in the order of the batch
+        final List<BulkItemResult> items = result.getItems();
+        for (int i = 0; i < items.size(); i++) {
+            final BulkItemResult item = items.get(i);
+            final long written = batch.get(i).sequence;
+            final WriteStatus status = item.isSuccessful()
+                    ? new WriteStatus(item.getId(), WriteStatus.State.INDEXED, null)
+                    : new WriteStatus(item.getId(), WriteStatus.State.FAILED, item.getError());
+            // A newer write of the same document may still be queued, and keeps its own status
+            statuses.computeIfPresent(item.getId(),
+                    (id, tracked) -> tracked.sequence == written ? new TrackedStatus(written, status) : tracked);
+        }
+        if (result.getFailed() > 0) {
+            LOGGER.warn("Failed to write {} of {} queued writes.", result.getFailed(), batch.size());
+        }
+    }
+
+    /**
+     * A write waiting in the queue, with its place in the order writes were accepted
+     */
+    private static final class QueuedWrite {
+        private final long sequence;
+        private final BulkOperation operation;
+
+        private QueuedWrite(final long sequence, final BulkOperation operation) {
+            this.sequence = sequence;
+            this.operation = operation;
+        }
+    }
+
+    /**
+     * The status of the most recent write of a document, and which write that was
+     */
+    private static final class TrackedStatus {
+        private final long sequence;
+        private final WriteStatus status;
+
+        private TrackedStatus(final long sequence, final WriteStatus status) {
+            this.sequence = sequence;
+            this.status = status;
+        }
+    }
+}
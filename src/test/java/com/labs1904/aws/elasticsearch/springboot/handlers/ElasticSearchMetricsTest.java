@@ -0,0 +1,22 @@
+package com.labs1904.aws.elasticsearch.springboot.handlers;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ElasticSearchMetricsTest {
+
+    @Test
+    public void removesTookFromTheStartOfTheBody() {
+        assertEquals("{\"hits\":{\"hits\":[]}}", ElasticSearchMetrics.withoutTook("{\"took\":12,\"hits\":{\"hits\":[]}}"));
+        assertEquals("{}", ElasticSearchMetrics.withoutTook("{\"took\": 3}"));
+    }
+
+    @Test
+    public void leavesBodiesWithoutTookAlone() {
+        assertEquals("{\"hits\":{\"took\":1}}", ElasticSearchMetrics.withoutTook("{\"hits\":{\"took\":1}}"));
+        assertEquals("", ElasticSearchMetrics.withoutTook(""));
+        assertNull(ElasticSearchMetrics.withoutTook(null));
+    }
+}
@@ -0,0 +1,328 @@
+package com.labs1904.aws.elasticsearch.springboot.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.labs1904.aws.elasticsearch.springboot.constants.ElasticSearchConstants;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * An in-process HTTP server that answers the ElasticSearch APIs the application calls: _search, _msearch, _bulk, _stats,
+ * _update, _scripts, _cluster/health, the read of the movies index and the document API. Every answer is delayed by a fixed latency plus a random jitter,
+ * and a share of the requests can be failed with a 503, to see how the application behaves when ElasticSearch is slow or
+ * overloaded. Health checks are never failed: an overloaded cluster still reports itself green.
+ *
+ * Searches always return the example movies, whatever the query, and the movies index always has the application's own
+ * mapping, so that the mapping check at startup finds it up to date. Requests are not checked for a valid signature.
+ */
+class ElasticSearchStandIn {
+
+    private static final Path EXAMPLE_DATA =
+            Paths.get("src/main/java/com/labs1904/aws/elasticsearch/springboot/config/exampleData");
+    private static final Path MAPPING = Paths.get("src/main/resources/mappings/movies.json");
+    private static final String INDEX = ElasticSearchConstants.MOVIES_INDEX;
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final String INJECTED_ERROR =
+            "{\"error\":{\"type\":\"es_rejected_execution_exception\",\"reason\":\"Injected by the stand-in\"},\"status\":503}";
+
+    private static final Pattern DOCUMENT_ID = Pattern.compile("\"_id\"\\s*:\\s*(\"[^\"]*\"|\\d+)");
+
+    private final long latencyMillis;
+    private final long jitterMillis;
+    private final double errorRate;
+
+    private final List<String> movies;
+    private final byte[] searchResponse;
+    private final String indexResponse;
+    private final Map<String, LongAdder> requests = new ConcurrentHashMap<>();
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * @param latencyMillis The time every answer is delayed by
+     * @param jitterMillis The most time an answer is delayed by on top of the latency, picked at random
+     * @param errorRate The share of requests, from 0 to 1, that are answered with a 503
+     */
+    ElasticSearchStandIn(final long latencyMillis, final long jitterMillis, final double errorRate) {
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        this.errorRate = errorRate;
+        this.movies = readMovies();
+        this.searchResponse = searchResponse(movies);
+        this.indexResponse = indexResponse();
+    }
+
+    static List<String> readMovies() {
+        try (Stream<Path> files = Files.list(EXAMPLE_DATA)) {
+            final List<String> movies = new ArrayList<>();
+            for (final Path file : (Iterable<Path>) files.sorted()::iterator) {
+                movies.add(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+            }
+            return movies;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the example movies from " + EXAMPLE_DATA, e);
+        }
+    }
+
+    private static byte[] searchResponse(final List<String> movies) {
+        final StringBuilder response = new StringBuilder("{\"took\":2,\"hits\":{\"hits\":[");
+        for (int i = 0; i < movies.size(); i++) {
+            response.append(i > 0 ? "," : "").append("{\"_source\":").append(movies.get(i))
+                    .append(",\"sort\":[1.0,").append(i + 1).append("]}");
+        }
+        return response.append("]}}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The movies index as GET movies answers it: the alias's versioned index, with the mapping under its type and
+     * the settings, analysis included, under index as strings
+     */
+    private static String indexResponse() {
+        try {
+            final JsonNode definition = OBJECT_MAPPER.readTree(MAPPING.toFile());
+            final ObjectNode index = OBJECT_MAPPER.createObjectNode();
+            final ObjectNode versioned = index.putObject(INDEX + "_v"
+                    + definition.path("mappings").path("_meta").path("version").asInt());
+            versioned.putObject("aliases").putObject(INDEX);
+            versioned.putObject("mappings").set(ElasticSearchConstants.MOVIES_DOCUMENT_TYPE, definition.path("mappings"));
+            final ObjectNode settings = versioned.putObject("settings").putObject("index");
+            final Iterator<Map.Entry<String, JsonNode>> fields = definition.path("settings").path("index").fields();
+            while (fields.hasNext()) {
+                final Map.Entry<String, JsonNode> field = fields.next();
+                settings.put(field.getKey(), field.getValue().asText());
+            }
+            settings.set("analysis", definition.path("settings").path("analysis"));
+            return index.toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the mapping from " + MAPPING, e);
+        }
+    }
+
+    void start() throws IOException {
+        executor = Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, "es-stand-in");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return The URL to configure as aws.endpoint
+     */
+    String getEndpoint() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * @return The number of requests answered, by API, in the order of the API names
+     */
+    Map<String, Long> getRequests() {
+        final Map<String, Long> counts = new TreeMap<>();
+        requests.forEach((api, count) -> counts.put(api, count.sum()));
+        return counts;
+    }
+
+    void resetRequests() {
+        requests.clear();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try {
+            final byte[] body = readBody(exchange);
+            // The AWS SDK sends every path with a trailing slash
+            final String path = exchange.getRequestURI().getPath().replaceAll("/+$", "");
+            final String method = exchange.getRequestMethod();
+            final String api = api(method, path);
+            requests.computeIfAbsent(api, key -> new LongAdder()).increment();
+
+            sleep(latencyMillis + (jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0));
+            if (errorRate > 0 && !"health".equals(api) && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                respond(exchange, 503, INJECTED_ERROR);
+                return;
+            }
+
+            switch (api) {
+                case "search":
+                    respond(exchange, 200, searchResponse);
+                    break;
+                case "msearch":
+                    respond(exchange, 200, multiSearchResponse(body));
+                    break;
+                case "bulk":
+                    respond(exchange, 200, bulkResponse(body));
+                    break;
+                case "stats":
+                    respond(exchange, 200, "{\"_all\":{\"primaries\":{\"docs\":{\"count\":" + movies.size() + "}}}}");
+                    break;
+                case "update":
+                    respond(exchange, 200, "{\"result\":\"updated\"}");
+                    break;
+                case "scripts":
+                    respond(exchange, 200, "{\"acknowledged\":true}");
+                    break;
+                case "getIndex":
+                    respond(exchange, 200, indexResponse);
+                    break;
+                case "health":
+                    respond(exchange, 200, "{\"cluster_name\":\"stand-in\",\"status\":\"green\",\"number_of_nodes\":1}");
+                    break;
+                case "index":
+                    respond(exchange, 201, "{\"result\":\"created\"}");
+                    break;
+                case "delete":
+                    respond(exchange, 200, "{\"result\":\"deleted\"}");
+                    break;
+                case "get":
+                    respond(exchange, 200, "{\"found\":true,\"_source\":" + movies.get(0) + "}");
+                    break;
+                default:
+                    respond(exchange, 404, "{\"error\":{\"type\":\"unknown_api\",\"reason\":\"" + method + " " + path + "\"},\"status\":404}");
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static String api(final String method, final String path) {
+        if (path.endsWith("/_search")) {
+            return "search";
+        }
+        if (path.endsWith("/_msearch")) {
+            return "msearch";
+        }
+        if (path.endsWith("/_bulk")) {
+            return "bulk";
+        }
+        if (path.endsWith("/_stats")) {
+            return "stats";
+        }
+        if (path.endsWith("/_update")) {
+            return "update";
+        }
+        // The mapping check at startup
+        if (method.equals("GET") && path.equals("/" + INDEX)) {
+            return "getIndex";
+        }
+        if (path.endsWith("/_cluster/health")) {
+            return "health";
+        }
+        // The stored script of PATCH /update
+        if (path.contains("/_scripts/")) {
+            return "scripts";
+        }
+        if (path.contains("/_") || path.split("/").length != 4) {
+            return "other";
+        }
+        switch (method) {
+            case "PUT":
+            case "POST":
+                return "index";
+            case "DELETE":
+                return "delete";
+            default:
+                return "get";
+        }
+    }
+
+    private String multiSearchResponse(final byte[] body) {
+        final long searches = lines(body).size() / 2;
+        final String hits = new String(searchResponse, StandardCharsets.UTF_8).replace("{\"took\":2,", "{\"status\":200,");
+        final StringBuilder response = new StringBuilder("{\"took\":2,\"responses\":[");
+        for (long i = 0; i < searches; i++) {
+            response.append(i > 0 ? "," : "").append(hits);
+        }
+        return response.append("]}").toString();
+    }
+
+    private static String bulkResponse(final byte[] body) {
+        final List<String> lines = lines(body);
+        final StringBuilder response = new StringBuilder("{\"took\":3,\"errors\":false,\"items\":[");
+        // Each action line is followed by its document, and only index actions are sent
+        for (int i = 0; i < lines.size(); i += 2) {
+            final Matcher id = DOCUMENT_ID.matcher(lines.get(i));
+            response.append(i > 0 ? "," : "").append("{\"index\":{\"_id\":").append(id.find() ? id.group(1) : "\"\"")
+                    .append(",\"status\":201}}");
+        }
+        return response.append("]}").toString();
+    }
+
+    private static List<String> lines(final byte[] body) {
+        final List<String> lines = new ArrayList<>();
+        for (final String line : new String(body, StandardCharsets.UTF_8).split("\n")) {
+            if (!line.isEmpty()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    private static byte[] readBody(final HttpExchange exchange) throws IOException {
+        InputStream content = exchange.getRequestBody();
+        if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+            content = new GZIPInputStream(content);
+        }
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        content.transferTo(body);
+        return body.toByteArray();
+    }
+
+    private static void respond(final HttpExchange exchange, final int status, final String body) throws IOException {
+        respond(exchange, status, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void respond(final HttpExchange exchange, final int status, final byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+
+    private static void sleep(final long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
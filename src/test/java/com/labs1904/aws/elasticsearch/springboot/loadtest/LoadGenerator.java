@@ -0,0 +1,172 @@
+package com.labs1904.aws.elasticsearch.springboot.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Sends requests to the application at a fixed rate from a pool of concurrent clients, picking each request from a
+ * weighted mix of scenarios.
+ *
+ * Every request has a time slot on a fixed schedule, and its latency is measured from that slot rather than from when
+ * it was actually sent. When the application falls behind and the clients cannot keep up with the schedule, the time
+ * requests spend waiting for a free client is counted too, so a slow application cannot hide its latency by slowing
+ * down the load.
+ */
+class LoadGenerator {
+
+    private static final int TIMEOUT_MILLIS = 60000;
+
+    private final String baseUrl;
+    private final int clients;
+    private final List<Scenario> scenarios = new ArrayList<>();
+    private int totalWeight;
+
+    /**
+     * @param baseUrl The URL of the application, e.g. http://localhost:8081
+     * @param clients The number of requests that can be open at the same time
+     */
+    LoadGenerator(final String baseUrl, final int clients) {
+        this.baseUrl = baseUrl;
+        this.clients = clients;
+    }
+
+    /**
+     * Add a request to the mix
+     *
+     * @param name The name the results are reported under
+     * @param weight How often the request is sent, relative to the weights of the other requests
+     * @param method The HTTP method
+     * @param path The path and query of the request
+     * @param body Makes the JSON body of each request, or null for requests without a body
+     * @return This LoadGenerator
+     */
+    LoadGenerator scenario(final String name, final int weight, final String method, final String path,
+                           final Supplier<byte[]> body) {
+        scenarios.add(new Scenario(name, weight, method, path, body));
+        totalWeight += weight;
+        return this;
+    }
+
+    /**
+     * Send requests at the rate for the duration, and wait until all of them are answered
+     *
+     * @param qps The number of requests to send per second
+     * @param seconds The number of seconds to send requests for
+     * @return The outcome of every request
+     */
+    LoadReport run(final int qps, final int seconds) throws InterruptedException {
+        final int total = qps * seconds;
+        final long interval = TimeUnit.SECONDS.toNanos(1) / qps;
+        final int[] scenarioOf = new int[total];
+        final long[] latencies = new long[total];
+        final boolean[] failed = new boolean[total];
+        final AtomicInteger next = new AtomicInteger();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(clients, runnable -> {
+            final Thread thread = new Thread(runnable, "load-client");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final long start = System.nanoTime();
+        for (int client = 0; client < clients; client++) {
+            executor.execute(() -> {
+                for (int i = next.getAndIncrement(); i < total; i = next.getAndIncrement()) {
+                    final long slot = start + i * interval;
+                    final long wait = slot - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                    scenarioOf[i] = pick();
+                    failed[i] = !send(scenarios.get(scenarioOf[i]));
+                    latencies[i] = System.nanoTime() - slot;
+                }
+            });
+        }
+        executor.shutdown();
+        if (!executor.awaitTermination(seconds + TimeUnit.MILLISECONDS.toSeconds(TIMEOUT_MILLIS) * 2L, TimeUnit.SECONDS)) {
+            executor.shutdownNow();
+            throw new IllegalStateException("Requests were still open long after the end of the load test");
+        }
+        final long elapsed = System.nanoTime() - start;
+
+        final List<String> names = new ArrayList<>();
+        scenarios.forEach(scenario -> names.add(scenario.name));
+        return new LoadReport(qps, elapsed, names, scenarioOf, latencies, failed);
+    }
+
+    private int pick() {
+        int ticket = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (int i = 0; i < scenarios.size(); i++) {
+            ticket -= scenarios.get(i).weight;
+            if (ticket < 0) {
+                return i;
+            }
+        }
+        return scenarios.size() - 1;
+    }
+
+    /**
+     * @return True when the application answered with a status below 400
+     */
+    private boolean send(final Scenario scenario) {
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(baseUrl + scenario.path).openConnection();
+            connection.setConnectTimeout(TIMEOUT_MILLIS);
+            connection.setReadTimeout(TIMEOUT_MILLIS);
+            connection.setRequestMethod(scenario.method);
+            if (scenario.body != null) {
+                final byte[] body = scenario.body.get();
+                connection.setDoOutput(true);
+                connection.setFixedLengthStreamingMode(body.length);
+                connection.setRequestProperty("Content-Type", "application/json");
+                try (OutputStream outputStream = connection.getOutputStream()) {
+                    outputStream.write(body);
+                }
+            }
+            final int status = connection.getResponseCode();
+            // Reading the whole answer lets the connection be kept alive for the next request
+            try (InputStream content = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                final byte[] buffer = new byte[8192];
+                while (content != null && content.read(buffer) >= 0) {
+                    // Discarded, only the status is checked
+                }
+            }
+            return status < 400;
+        } catch (IOException e) {
+            if (connection != null) {
+                connection.disconnect();
+            }
+            return false;
+        }
+    }
+
+    private static final class Scenario {
+        private final String name;
+        private final int weight;
+        private final String method;
+        private final String path;
+        private final Supplier<byte[]> body;
+
+        private Scenario(final String name, final int weight, final String method, final String path,
+                         final Supplier<byte[]> body) {
+            this.name = name;
+            this.weight = weight;
+            this.method = method;
+            this.path = path;
+            this.body = body;
+        }
+    }
+}
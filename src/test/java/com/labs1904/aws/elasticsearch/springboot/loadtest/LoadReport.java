@@ -0,0 +1,136 @@
+package com.labs1904.aws.elasticsearch.springboot.loadtest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The throughput, latency percentiles and error rate of a load test, overall and for each scenario
+ */
+class LoadReport {
+
+    private final int targetQps;
+    private final long elapsedNanos;
+    private final List<String> names;
+    private final int[] scenarioOf;
+    private final long[] latencies;
+    private final boolean[] failed;
+
+    LoadReport(final int targetQps, final long elapsedNanos, final List<String> names, final int[] scenarioOf,
+               final long[] latencies, final boolean[] failed) {
+        this.targetQps = targetQps;
+        this.elapsedNanos = elapsedNanos;
+        this.names = names;
+        this.scenarioOf = scenarioOf;
+        this.latencies = latencies;
+        this.failed = failed;
+    }
+
+    /**
+     * @return The requests answered per second, over the whole run
+     */
+    double getThroughput() {
+        return latencies.length / (elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    double getErrorRate() {
+        return stats(-1).errorRate();
+    }
+
+    /**
+     * @param percentile The percentile, from 0 to 100
+     * @return The latency of the percentile over every request, in milliseconds
+     */
+    double getLatencyMillis(final double percentile) {
+        return stats(-1).percentile(percentile);
+    }
+
+    /**
+     * Check the run against the thresholds
+     *
+     * @return A line for every threshold that was breached, empty when the run passed
+     */
+    List<String> breaches(final double minThroughputRatio, final double maxP99Millis, final double maxErrorRate) {
+        final List<String> breaches = new ArrayList<>();
+        if (getThroughput() < targetQps * minThroughputRatio) {
+            breaches.add(String.format(Locale.ROOT, "Throughput of %.1f/s is below %.0f%% of the target of %d/s",
+                    getThroughput(), minThroughputRatio * 100, targetQps));
+        }
+        if (getLatencyMillis(99) > maxP99Millis) {
+            breaches.add(String.format(Locale.ROOT, "p99 latency of %.1fms is above %.1fms",
+                    getLatencyMillis(99), maxP99Millis));
+        }
+        if (getErrorRate() > maxErrorRate) {
+            breaches.add(String.format(Locale.ROOT, "Error rate of %.2f%% is above %.2f%%",
+                    getErrorRate() * 100, maxErrorRate * 100));
+        }
+        return breaches;
+    }
+
+    /**
+     * @return A table of the results, one line per scenario and a line for all of them
+     */
+    String format() {
+        final StringBuilder table = new StringBuilder(String.format(Locale.ROOT,
+                "Sent %d requests in %.1fs, %.1f/s against a target of %d/s%n",
+                latencies.length, elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1), getThroughput(), targetQps));
+        table.append(String.format(Locale.ROOT, "%-14s %8s %8s %9s %9s %9s %9s %9s%n",
+                "scenario", "requests", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms"));
+        for (int scenario = 0; scenario < names.size(); scenario++) {
+            row(table, names.get(scenario), stats(scenario));
+        }
+        row(table, "all", stats(-1));
+        return table.toString();
+    }
+
+    private static void row(final StringBuilder table, final String name, final Stats stats) {
+        table.append(String.format(Locale.ROOT, "%-14s %8d %7.2f%% %9.1f %9.1f %9.1f %9.1f %9.1f%n",
+                name, stats.sorted.length, stats.errorRate() * 100, stats.percentile(50), stats.percentile(90),
+                stats.percentile(99), stats.percentile(99.9), stats.percentile(100)));
+    }
+
+    /**
+     * @param scenario The index of the scenario, or -1 for every request
+     */
+    private Stats stats(final int scenario) {
+        final long[] selected = new long[latencies.length];
+        int count = 0;
+        int errors = 0;
+        for (int i = 0; i < latencies.length; i++) {
+            if (scenario < 0 || scenarioOf[i] == scenario) {
+                selected[count++] = latencies[i];
+                errors += failed[i] ? 1 : 0;
+            }
+        }
+        final long[] sorted = Arrays.copyOf(selected, count);
+        Arrays.sort(sorted);
+        return new Stats(sorted, errors);
+    }
+
+    private static final class Stats {
+        private final long[] sorted;
+        private final int errors;
+
+        private Stats(final long[] sorted, final int errors) {
+            this.sorted = sorted;
+            this.errors = errors;
+        }
+
+        private double errorRate() {
+            return sorted.length == 0 ? 0 : errors / (double) sorted.length;
+        }
+
+        /**
+         * The nearest-rank percentile, in milliseconds
+         */
+        private double percentile(final double percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            final int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+            return sorted[Math.max(0, rank - 1)] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        }
+    }
+}
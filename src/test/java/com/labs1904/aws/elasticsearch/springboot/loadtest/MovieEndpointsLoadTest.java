@@ -0,0 +1,115 @@
+package com.labs1904.aws.elasticsearch.springboot.loadtest;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives the /elastic-search endpoints of the application at a target rate, with ElasticSearch replaced by a local
+ * stand-in, and fails when the throughput, the p99 latency or the error rate breach their thresholds.
+ *
+ * Only runs with the load-test profile: mvn -Pload-test test. The load, the behaviour of the stand-in and the
+ * thresholds are set with system properties, e.g. -Dloadtest.qps=500 -Dloadtest.errorRate=0.01
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class MovieEndpointsLoadTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MovieEndpointsLoadTest.class);
+
+    private static final int QPS = Integer.getInteger("loadtest.qps", 200);
+    private static final int SECONDS = Integer.getInteger("loadtest.seconds", 30);
+    private static final int WARMUP_SECONDS = Integer.getInteger("loadtest.warmupSeconds", 10);
+    private static final int CLIENTS = Integer.getInteger("loadtest.clients", 64);
+    private static final int DISTINCT_SEARCHES = Integer.getInteger("loadtest.distinctSearches", 1000);
+
+    private static final long LATENCY_MILLIS = Long.getLong("loadtest.latencyMillis", 20);
+    private static final long JITTER_MILLIS = Long.getLong("loadtest.jitterMillis", 10);
+    private static final double ERROR_RATE = Double.parseDouble(System.getProperty("loadtest.errorRate", "0"));
+
+    private static final double MIN_THROUGHPUT_RATIO =
+            Double.parseDouble(System.getProperty("loadtest.minThroughputRatio", "0.95"));
+    private static final double MAX_P99_MILLIS = Double.parseDouble(System.getProperty("loadtest.maxP99Millis", "500"));
+    private static final double MAX_ERROR_RATE = Double.parseDouble(System.getProperty("loadtest.maxErrorRate", "0.01"));
+
+    private static ElasticSearchStandIn standIn;
+    private static List<String> movies;
+
+    @LocalServerPort
+    private int port;
+
+    @BeforeClass
+    public static void startStandIn() throws IOException {
+        standIn = new ElasticSearchStandIn(LATENCY_MILLIS, JITTER_MILLIS, ERROR_RATE);
+        standIn.start();
+        movies = ElasticSearchStandIn.readMovies();
+        // Read by the application context, which is created after this runs
+        System.setProperty("aws.endpoint", standIn.getEndpoint());
+        // The stand-in does not check signatures, but requests are still signed, so the SDK needs some credentials
+        if (System.getProperty("aws.accessKeyId") == null) {
+            System.setProperty("aws.accessKeyId", "LOADTEST");
+            System.setProperty("aws.secretKey", "LOADTEST");
+        }
+    }
+
+    @AfterClass
+    public static void stopStandIn() {
+        System.clearProperty("aws.endpoint");
+        standIn.stop();
+    }
+
+    @Test
+    public void endpointsKeepUpWithTheTargetRate() throws InterruptedException {
+        final LoadGenerator loadGenerator = new LoadGenerator("http://localhost:" + port + "/elastic-search", CLIENTS)
+                .scenario("search", 50, "POST", "/search", () -> search("title"))
+                .scenario("fuzzySearch", 15, "POST", "/fuzzySearch", () -> search("storyline"))
+                .scenario("create", 10, "POST", "/create", MovieEndpointsLoadTest::movie)
+                // The body of an update has to carry the same id, 1 is the id of Black_Panther, the second movie
+                .scenario("update", 10, "PUT", "/update?id=1", () -> json(movies.get(1)))
+                .scenario("bulk", 5, "POST", "/bulk", () -> json("[" + String.join(",", movies) + "]"))
+                .scenario("statistics", 5, "GET", "/statistics?index=movies", null)
+                .scenario("delete", 5, "DELETE", "/delete?index=movies&type=movie&id=1", null);
+
+        LOGGER.info("Warming up for {}s at {} requests/s.", WARMUP_SECONDS, QPS);
+        loadGenerator.run(QPS, WARMUP_SECONDS);
+        standIn.resetRequests();
+
+        LOGGER.info("Load testing for {}s at {} requests/s with {} clients, ElasticSearch latency {}ms +{}ms, error rate {}.",
+                SECONDS, QPS, CLIENTS, LATENCY_MILLIS, JITTER_MILLIS, ERROR_RATE);
+        final LoadReport report = loadGenerator.run(QPS, SECONDS);
+        LOGGER.info("Load test results:{}{}Requests to the ElasticSearch stand-in: {}",
+                System.lineSeparator(), report.format(), standIn.getRequests());
+
+        final List<String> breaches = report.breaches(MIN_THROUGHPUT_RATIO, MAX_P99_MILLIS, MAX_ERROR_RATE);
+        assertTrue("Load test thresholds breached: " + breaches, breaches.isEmpty());
+    }
+
+    /**
+     * A search on one field, drawn from a fixed number of distinct searches so that some of them hit the result cache
+     */
+    private static byte[] search(final String field) {
+        final int search = ThreadLocalRandom.current().nextInt(DISTINCT_SEARCHES);
+        return json("{\"" + field + "\":\"avengers " + search + "\"}");
+    }
+
+    private static byte[] movie() {
+        return json(movies.get(ThreadLocalRandom.current().nextInt(movies.size())));
+    }
+
+    private static byte[] json(final String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,111 @@
+package com.labs1904.aws.elasticsearch.springboot.services;
+
+import com.labs1904.aws.elasticsearch.springboot.config.ConfigurationInfo;
+import com.labs1904.aws.elasticsearch.springboot.exceptions.CircuitOpenException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CircuitBreakerTest {
+
+    private static final long OPEN_MILLIS = 50;
+
+    private CircuitBreaker.Circuit circuit;
+
+    @Before
+    public void setUp() {
+        final ConfigurationInfo configurationInfo = new ConfigurationInfo();
+        configurationInfo.getCircuitBreaker().setWindowSize(4);
+        configurationInfo.getCircuitBreaker().setMinimumCalls(4);
+        configurationInfo.getCircuitBreaker().setFailureRateThreshold(0.5);
+        configurationInfo.getCircuitBreaker().setOpenMillis(OPEN_MILLIS);
+        circuit = new CircuitBreaker(configurationInfo, new SimpleMeterRegistry()).circuit("http://localhost:9200");
+    }
+
+    @Test
+    public void staysClosedUntilEnoughCallsFailed() {
+        call(false);
+        call(false);
+        call(true);
+        assertEquals(CircuitBreaker.State.CLOSED, circuit.getState());
+
+        call(true);
+        assertEquals(CircuitBreaker.State.OPEN, circuit.getState());
+    }
+
+    @Test
+    public void rejectsRequestsWhileOpen() {
+        open();
+
+        assertFalse(circuit.isAvailable());
+        try {
+            circuit.acquire();
+            fail("An open circuit let a request through");
+        } catch (CircuitOpenException e) {
+            assertTrue(e.getRetryAfterMillis() <= OPEN_MILLIS);
+        }
+    }
+
+    @Test
+    public void letsOneProbeThroughOnceTheOpenTimeHasPassed() throws Exception {
+        open();
+        Thread.sleep(OPEN_MILLIS + 10);
+
+        assertTrue(circuit.isAvailable());
+        circuit.acquire();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuit.getState());
+        assertFalse(circuit.isAvailable());
+        try {
+            circuit.acquire();
+            fail("A half open circuit let a second request through");
+        } catch (CircuitOpenException expected) {
+            // Only the probe is sent
+        }
+
+        circuit.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, circuit.getState());
+    }
+
+    @Test
+    public void opensAgainWhenTheProbeFails() throws Exception {
+        open();
+        Thread.sleep(OPEN_MILLIS + 10);
+
+        circuit.acquire();
+        circuit.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, circuit.getState());
+        assertFalse(circuit.isAvailable());
+    }
+
+    @Test
+    public void releasingTheProbeLetsAnotherOneThrough() throws Exception {
+        open();
+        Thread.sleep(OPEN_MILLIS + 10);
+
+        circuit.acquire();
+        circuit.release();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuit.getState());
+        assertTrue(circuit.isAvailable());
+    }
+
+    private void open() {
+        for (int i = 0; i < 4; i++) {
+            call(true);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, circuit.getState());
+    }
+
+    private void call(final boolean failed) {
+        circuit.acquire();
+        if (failed) {
+            circuit.onFailure();
+        } else {
+            circuit.onSuccess();
+        }
+    }
+}
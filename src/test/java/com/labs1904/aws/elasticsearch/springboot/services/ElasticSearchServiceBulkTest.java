@@ -0,0 +1,201 @@
+package com.labs1904.aws.elasticsearch.springboot.services;
+
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.Request;
+import com.amazonaws.http.HttpMethodName;
+import com.amazonaws.http.HttpResponse;
+import com.amazonaws.util.IOUtils;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.labs1904.aws.elasticsearch.springboot.config.ConfigurationInfo;
+import com.labs1904.aws.elasticsearch.springboot.handlers.AwsResponse;
+import com.labs1904.aws.elasticsearch.springboot.models.BulkItemResult;
+import com.labs1904.aws.elasticsearch.springboot.models.BulkOperation;
+import com.labs1904.aws.elasticsearch.springboot.models.BulkResult;
+import com.labs1904.aws.elasticsearch.springboot.models.Movie;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ElasticSearchServiceBulkTest {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final ConfigurationInfo configurationInfo = new ConfigurationInfo();
+    // The ids of the documents in every chunk sent, in the order they were sent
+    private final List<List<String>> chunks = Collections.synchronizedList(new ArrayList<>());
+    private final Set<String> rejected = new HashSet<>();
+    private boolean failRequests;
+
+    private ExecutorService bulkExecutor;
+    private ElasticSearchService elasticSearchService;
+
+    @Before
+    public void setUp() {
+        configurationInfo.getBulk().setConcurrency(1);
+        bulkExecutor = Executors.newSingleThreadExecutor();
+
+        // Sends nothing: every request is answered by bulkResponse
+        elasticSearchService = new ElasticSearchService() {
+            @Override
+            Request generateSignedRequest(final String url, final byte[] body, final String contentType,
+                                          final Map<String, List<String>> parameters,
+                                          final HttpMethodName httpMethodName) {
+                final Request<?> request = new DefaultRequest<>("es");
+                request.setContent(new ByteArrayInputStream(body));
+                return request;
+            }
+
+            @Override
+            AwsResponse executeRequest(final Request request) {
+                return bulkResponse(request);
+            }
+        };
+        ReflectionTestUtils.setField(elasticSearchService, "configurationInfo", configurationInfo);
+        ReflectionTestUtils.setField(elasticSearchService, "searchResultCache",
+                new SearchResultCache(configurationInfo, new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(elasticSearchService, "bulkExecutor", bulkExecutor);
+    }
+
+    @After
+    public void tearDown() {
+        bulkExecutor.shutdownNow();
+    }
+
+    @Test
+    public void splitsOperationsIntoChunksByDocumentCount() {
+        configurationInfo.getBulk().setMaxDocuments(2);
+
+        final BulkResult result = elasticSearchService.bulk(operations(1, 2, 3, 4, 5));
+
+        assertEquals(Arrays.asList(Arrays.asList("1", "2"), Arrays.asList("3", "4"), Collections.singletonList("5")),
+                chunks);
+        assertEquals(5, result.getSucceeded());
+        assertEquals(Arrays.asList("1", "2", "3", "4", "5"), ids(result));
+    }
+
+    @Test
+    public void splitsOperationsIntoChunksByBytes() {
+        // Every entry is larger than the limit, and is still sent, in a chunk of its own
+        configurationInfo.getBulk().setMaxBytes(1);
+
+        final BulkResult result = elasticSearchService.bulk(operations(1, 2, 3));
+
+        assertEquals(Arrays.asList(Collections.singletonList("1"), Collections.singletonList("2"),
+                Collections.singletonList("3")), chunks);
+        assertEquals(3, result.getSucceeded());
+    }
+
+    @Test
+    public void reportsTheErrorOfEveryFailedItem() {
+        rejected.add("2");
+        final List<BulkOperation> operations = new ArrayList<>(operations(1, 2, 3));
+        operations.add(BulkOperation.index(new Movie()));
+
+        final BulkResult result = elasticSearchService.bulk(operations);
+
+        assertEquals(2, result.getSucceeded());
+        assertEquals(2, result.getFailed());
+        final BulkItemResult failed = result.getItems().get(1);
+        assertEquals("2", failed.getId());
+        assertEquals(400, failed.getStatus());
+        assertEquals("mapper_parsing_exception: failed to parse [year]", failed.getError());
+        assertNull(result.getItems().get(2).getError());
+        // A Movie without an id is never sent
+        assertEquals(400, result.getItems().get(3).getStatus());
+        assertEquals(Collections.singletonList(Arrays.asList("1", "2", "3")), chunks);
+    }
+
+    @Test
+    public void failsEveryItemOfAChunkThatWasNotAnswered() {
+        configurationInfo.getBulk().setMaxDocuments(2);
+        failRequests = true;
+
+        final BulkResult result = elasticSearchService.bulk(operations(1, 2, 3));
+
+        assertEquals(3, result.getFailed());
+        for (BulkItemResult item : result.getItems()) {
+            assertEquals(502, item.getStatus());
+        }
+    }
+
+    private static List<BulkOperation> operations(final long... ids) {
+        final List<BulkOperation> operations = new ArrayList<>();
+        for (long id : ids) {
+            final Movie movie = new Movie();
+            movie.setId(id);
+            movie.setTitle("Movie " + id);
+            operations.add(BulkOperation.index(movie));
+        }
+        return operations;
+    }
+
+    private static List<String> ids(final BulkResult result) {
+        final List<String> ids = new ArrayList<>();
+        for (BulkItemResult item : result.getItems()) {
+            ids.add(item.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * Answer a bulk request the way ElasticSearch does, with an item for every action line, in request order
+     */
+    private AwsResponse bulkResponse(final Request<?> request) {
+        try {
+            return bulkResponse(IOUtils.toString(request.getContent()), request);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private AwsResponse bulkResponse(final String body, final Request<?> request) throws IOException {
+        final String[] lines = body.split("\n");
+        final List<String> ids = new ArrayList<>();
+        final ObjectNode response = OBJECT_MAPPER.createObjectNode();
+        final ArrayNode items = response.putArray("items");
+        for (int i = 0; i < lines.length; i += 2) {
+            final JsonNode action = OBJECT_MAPPER.readTree(lines[i]).path("index");
+            final String id = action.path("_id").asText();
+            ids.add(id);
+            final ObjectNode item = items.addObject().putObject("index");
+            item.put("_id", id);
+            if (rejected.contains(id)) {
+                item.put("status", 400);
+                item.putObject("error").put("type", "mapper_parsing_exception").put("reason", "failed to parse [year]");
+            } else {
+                item.put("status", 201);
+            }
+        }
+        chunks.add(ids);
+        if (failRequests) {
+            return null;
+        }
+
+        final HttpResponse httpResponse = new HttpResponse(request, null);
+        httpResponse.setStatusCode(200);
+        httpResponse.setContent(new ByteArrayInputStream(response.toString().getBytes(StandardCharsets.UTF_8)));
+        return new AwsResponse(httpResponse);
+    }
+}
@@ -0,0 +1,78 @@
+package com.labs1904.aws.elasticsearch.springboot.services;
+
+import com.labs1904.aws.elasticsearch.springboot.config.ConfigurationInfo;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RequestCoalescerTest {
+
+    private static final byte[] RESULT = "{\"hits\":{}}".getBytes(StandardCharsets.UTF_8);
+
+    private ConfigurationInfo configurationInfo;
+    private RequestCoalescer requestCoalescer;
+
+    @Before
+    public void setUp() {
+        configurationInfo = new ConfigurationInfo();
+        configurationInfo.getCoalescing().setMaxWaitMillis(5000);
+        requestCoalescer = new RequestCoalescer(configurationInfo, new SimpleMeterRegistry());
+    }
+
+    @Test
+    public void sharesTheResultOfTheLeader() throws Exception {
+        final RequestCoalescer.Flight leader = requestCoalescer.begin("key");
+        final RequestCoalescer.Flight follower = requestCoalescer.begin("key");
+        assertTrue(leader.isLeader());
+        assertFalse(follower.isLeader());
+
+        final CompletableFuture<byte[]> waiting = CompletableFuture.supplyAsync(follower::await);
+        leader.complete(RESULT);
+
+        assertArrayEquals(RESULT, waiting.get(1, TimeUnit.SECONDS));
+        assertTrue(requestCoalescer.begin("key").isLeader());
+    }
+
+    @Test
+    public void followerSendsItsOwnRequestWhenTheLeaderFails() throws Exception {
+        final RequestCoalescer.Flight leader = requestCoalescer.begin("key");
+        final RequestCoalescer.Flight follower = requestCoalescer.begin("key");
+
+        final CompletableFuture<byte[]> waiting = CompletableFuture.supplyAsync(follower::await);
+        // A leader that failed has no result to share
+        leader.complete(null);
+
+        assertNull(waiting.get(1, TimeUnit.SECONDS));
+        assertTrue(requestCoalescer.begin("key").isLeader());
+    }
+
+    @Test
+    public void followerStopsWaitingOnASlowLeader() {
+        configurationInfo.getCoalescing().setMaxWaitMillis(20);
+        final RequestCoalescer.Flight leader = requestCoalescer.begin("key");
+
+        assertNull(requestCoalescer.begin("key").await());
+        // Later searches do not wait on the slow leader either
+        assertTrue(requestCoalescer.begin("key").isLeader());
+        leader.complete(RESULT);
+    }
+
+    @Test
+    public void neverSharesWhenDisabledOrWithoutAKey() {
+        assertTrue(requestCoalescer.begin(null).isLeader());
+        assertTrue(requestCoalescer.begin(null).isLeader());
+
+        configurationInfo.getCoalescing().setEnabled(false);
+        assertTrue(requestCoalescer.begin("key").isLeader());
+        assertTrue(requestCoalescer.begin("key").isLeader());
+    }
+}
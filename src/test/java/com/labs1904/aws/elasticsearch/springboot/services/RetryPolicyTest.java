@@ -0,0 +1,127 @@
+package com.labs1904.aws.elasticsearch.springboot.services;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.Request;
+import com.amazonaws.SdkClientException;
+import com.amazonaws.http.HttpMethodName;
+import com.labs1904.aws.elasticsearch.springboot.config.ConfigurationInfo;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void spendsTheBudgetAndRefillsItWithRequests() {
+        final ConfigurationInfo configurationInfo = new ConfigurationInfo();
+        configurationInfo.getRetry().setBudgetBurst(2);
+        configurationInfo.getRetry().setBudgetRatio(0.5);
+        final RetryPolicy retryPolicy = new RetryPolicy(configurationInfo, new SimpleMeterRegistry());
+
+        assertTrue(retryPolicy.shouldRetry(1, -1));
+        assertTrue(retryPolicy.shouldRetry(1, -1));
+        assertFalse(retryPolicy.shouldRetry(1, -1));
+
+        retryPolicy.onRequest();
+        assertFalse(retryPolicy.shouldRetry(1, -1));
+        retryPolicy.onRequest();
+        assertTrue(retryPolicy.shouldRetry(1, -1));
+    }
+
+    @Test
+    public void stopsAfterTheLastAttemptOrATooLongRetryAfter() {
+        final ConfigurationInfo configurationInfo = new ConfigurationInfo();
+        configurationInfo.getRetry().setMaxAttempts(3);
+        configurationInfo.getRetry().setMaxRetryAfterMillis(1000);
+        final RetryPolicy retryPolicy = new RetryPolicy(configurationInfo, new SimpleMeterRegistry());
+
+        assertTrue(retryPolicy.shouldRetry(2, 1000));
+        assertFalse(retryPolicy.shouldRetry(3, -1));
+        assertFalse(retryPolicy.shouldRetry(1, 1001));
+    }
+
+    @Test
+    public void waitsAtLeastTheRetryAfter() {
+        final ConfigurationInfo configurationInfo = new ConfigurationInfo();
+        configurationInfo.getRetry().setBaseDelayMillis(10);
+        configurationInfo.getRetry().setMaxDelayMillis(40);
+        final RetryPolicy retryPolicy = new RetryPolicy(configurationInfo, new SimpleMeterRegistry());
+
+        for (int attempt = 1; attempt <= 5; attempt++) {
+            final long delay = retryPolicy.delayMillis(attempt, -1);
+            assertTrue(delay >= 0 && delay <= Math.min(40, 10 << (attempt - 1)));
+        }
+        assertEquals(500, retryPolicy.delayMillis(1, 500));
+    }
+
+    @Test
+    public void readsRetryAfterInSeconds() {
+        assertEquals(3000, RetryPolicy.retryAfterMillis(failure(429, "3")));
+        assertEquals(0, RetryPolicy.retryAfterMillis(failure(429, "-5")));
+    }
+
+    @Test
+    public void readsRetryAfterAsADate() {
+        final String date = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(30));
+
+        final long retryAfterMillis = RetryPolicy.retryAfterMillis(failure(503, date));
+
+        assertTrue(retryAfterMillis > 25_000 && retryAfterMillis <= 30_000);
+        assertEquals(0, RetryPolicy.retryAfterMillis(failure(503, "Thu, 01 Jan 1970 00:00:00 GMT")));
+    }
+
+    @Test
+    public void ignoresAMissingOrUnreadableRetryAfter() {
+        assertEquals(-1, RetryPolicy.retryAfterMillis(failure(503, null)));
+        assertEquals(-1, RetryPolicy.retryAfterMillis(failure(503, "soon")));
+        assertEquals(-1, RetryPolicy.retryAfterMillis(new SdkClientException("Connection refused")));
+    }
+
+    @Test
+    public void retriesOnlyThrottlingAndUnavailability() {
+        assertTrue(RetryPolicy.isRetryable(failure(429, null)));
+        assertTrue(RetryPolicy.isRetryable(failure(503, null)));
+        assertFalse(RetryPolicy.isRetryable(failure(400, null)));
+        assertFalse(RetryPolicy.isRetryable(failure(500, null)));
+        assertTrue(RetryPolicy.isRetryable(new SdkClientException("Connection refused", new IOException())));
+    }
+
+    @Test
+    public void neverRetriesARequestThatOpensAScroll() {
+        assertTrue(RetryPolicy.isIdempotent(request(HttpMethodName.POST, "movies/_search", Collections.emptyMap())));
+        assertFalse(RetryPolicy.isIdempotent(request(HttpMethodName.POST, "movies/_search",
+                Collections.singletonMap("scroll", Collections.singletonList("1m")))));
+        assertFalse(RetryPolicy.isIdempotent(request(HttpMethodName.POST, "_search/scroll", Collections.emptyMap())));
+        assertTrue(RetryPolicy.isIdempotent(request(HttpMethodName.PUT, "movies/movie/1", Collections.emptyMap())));
+    }
+
+    private static AmazonServiceException failure(final int status, final String retryAfter) {
+        final AmazonServiceException e = new AmazonServiceException("Failed");
+        e.setStatusCode(status);
+        e.setHttpHeaders(retryAfter != null ? Collections.singletonMap("Retry-After", retryAfter)
+                : Collections.emptyMap());
+        return e;
+    }
+
+    private static Request<?> request(final HttpMethodName method, final String path,
+                                      final Map<String, List<String>> parameters) {
+        final Request<?> request = new DefaultRequest<>("es");
+        request.setHttpMethod(method);
+        request.setEndpoint(URI.create("http://localhost:9200/" + path));
+        request.setParameters(parameters);
+        return request;
+    }
+}
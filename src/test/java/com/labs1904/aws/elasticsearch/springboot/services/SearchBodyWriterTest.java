@@ -0,0 +1,206 @@
+package com.labs1904.aws.elasticsearch.springboot.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.labs1904.aws.elasticsearch.springboot.models.Facet;
+import com.labs1904.aws.elasticsearch.springboot.models.MovieQuery;
+import com.labs1904.aws.elasticsearch.springboot.models.SourceFilter;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class SearchBodyWriterTest {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final Set<String> KEYWORD_FIELDS = new HashSet<>(
+            Arrays.asList("genre", "mpaaRating", "imdbUrl", "language", "country"));
+
+    @Test
+    public void writesEmptyMatchQuery() throws Exception {
+        assertJson("{'query':{'bool':{'must':[]}},'from':0,'size':100}",
+                SearchBodyWriter.match(new MovieQuery(), KEYWORD_FIELDS).from(0).size(100).toBytes());
+    }
+
+    @Test
+    public void writesTextAsMatchAndExactFieldsAsFilters() throws Exception {
+        final MovieQuery movieQuery = new MovieQuery();
+        movieQuery.setId(7L);
+        movieQuery.setTitle("Black Panther");
+        movieQuery.setYear(2018);
+        movieQuery.setGenre(new LinkedHashSet<>(Arrays.asList("Action", "Sci-Fi")));
+        movieQuery.setMpaaRating("PG-13");
+        movieQuery.setLanguage("English");
+        movieQuery.setStoryline("Wakanda");
+
+        assertJson("{'query':{'bool':{"
+                        + "'must':["
+                        + "{'match':{'title':'Black Panther'}},"
+                        + "{'match':{'storyline':'Wakanda'}}"
+                        + "],"
+                        + "'filter':["
+                        + "{'term':{'id':7}},"
+                        + "{'term':{'year':2018}},"
+                        + "{'terms':{'genre':['Action','Sci-Fi']}},"
+                        + "{'term':{'mpaaRating':'PG-13'}},"
+                        + "{'term':{'language':'English'}}"
+                        + "]}},'_source':['title']}",
+                SearchBodyWriter.match(movieQuery, KEYWORD_FIELDS).source(Collections.singleton("title")).toBytes());
+    }
+
+    @Test
+    public void writesOnlyFiltersWhenNoTextIsSearched() throws Exception {
+        final MovieQuery movieQuery = new MovieQuery();
+        movieQuery.setYear(2001);
+        movieQuery.setImdbUrl("https://www.imdb.com/title/tt0246578/");
+        movieQuery.setCountry("USA");
+
+        assertJson("{'query':{'bool':{'must':[],'filter':["
+                        + "{'term':{'year':2001}},"
+                        + "{'term':{'imdbUrl':'https://www.imdb.com/title/tt0246578/'}},"
+                        + "{'term':{'country':'USA'}}"
+                        + "]}}}",
+                SearchBodyWriter.match(movieQuery, KEYWORD_FIELDS).toBytes());
+    }
+
+    @Test
+    public void writesMatchForFieldsNotConfirmedAsKeywords() throws Exception {
+        final MovieQuery movieQuery = new MovieQuery();
+        movieQuery.setGenre(new LinkedHashSet<>(Arrays.asList("Action", "Sci-Fi")));
+        movieQuery.setMpaaRating("PG-13");
+        movieQuery.setCountry("USA");
+
+        assertJson("{'query':{'bool':{'must':[],'filter':["
+                        + "{'bool':{'should':[{'match':{'genre':'Action'}},{'match':{'genre':'Sci-Fi'}}]}},"
+                        + "{'match':{'mpaaRating':'PG-13'}},"
+                        + "{'match':{'country':'USA'}}"
+                        + "]}}}",
+                SearchBodyWriter.match(movieQuery, Collections.emptySet()).toBytes());
+
+        movieQuery.setGenre(Collections.singleton("Drama"));
+        assertJson("{'query':{'bool':{'must':[],'filter':["
+                        + "{'match':{'genre':'Drama'}},"
+                        + "{'match':{'mpaaRating':'PG-13'}},"
+                        + "{'term':{'country':'USA'}}"
+                        + "]}}}",
+                SearchBodyWriter.match(movieQuery, Collections.singleton("country")).toBytes());
+    }
+
+    @Test
+    public void trimsTextAsTheCacheKeyDoes() throws Exception {
+        final MovieQuery movieQuery = new MovieQuery();
+        movieQuery.setTitle(" Alien ");
+        movieQuery.setCountry("USA ");
+
+        assertJson("{'query':{'bool':{'must':[{'match':{'title':'Alien'}}],'filter':[{'term':{'country':'USA'}}]}}}",
+                SearchBodyWriter.match(movieQuery, KEYWORD_FIELDS).toBytes());
+    }
+
+    @Test
+    public void writesIncludedAndExcludedFields() throws Exception {
+        final SourceFilter sourceFilter = new SourceFilter(Collections.singleton("title"),
+                new LinkedHashSet<>(Arrays.asList("synopsis", "cast.biography")));
+
+        assertJson("{'query':{'bool':{'must':[]}},"
+                        + "'_source':{'includes':['title'],'excludes':['synopsis','cast.biography']}}",
+                SearchBodyWriter.match(new MovieQuery(), KEYWORD_FIELDS).source(sourceFilter).toBytes());
+        assertJson("{'query':{'bool':{'must':[]}},'_source':['title']}",
+                SearchBodyWriter.match(new MovieQuery(), KEYWORD_FIELDS).source(new SourceFilter(Collections.singleton("title"), null)).toBytes());
+        assertJson("{'query':{'bool':{'must':[]}}}",
+                SearchBodyWriter.match(new MovieQuery(), KEYWORD_FIELDS).source(new SourceFilter(null, null)).toBytes());
+    }
+
+    @Test
+    public void writesSingleGenreAsTermStatement() throws Exception {
+        final MovieQuery movieQuery = new MovieQuery();
+        movieQuery.setGenre(Collections.singleton("Drama"));
+
+        assertJson("{'query':{'bool':{'must':[],'filter':[{'term':{'genre':'Drama'}}]}}}",
+                SearchBodyWriter.match(movieQuery, KEYWORD_FIELDS).toBytes());
+    }
+
+    @Test
+    public void writesRangesAsFilters() throws Exception {
+        final MovieQuery movieQuery = new MovieQuery();
+        movieQuery.setTitle("Star Wars");
+        movieQuery.setMinYear(1977L);
+        movieQuery.setMaxYear(1983L);
+        movieQuery.setMinStarRating(4.5);
+        movieQuery.setMaxDuration(120L);
+
+        assertJson("{'query':{'bool':{"
+                        + "'must':[{'match':{'title':'Star Wars'}}],"
+                        + "'filter':["
+                        + "{'range':{'year':{'gte':1977,'lte':1983}}},"
+                        + "{'range':{'starRating':{'gte':4.5}}},"
+                        + "{'range':{'duration':{'lte':120}}}"
+                        + "]}}}",
+                SearchBodyWriter.match(movieQuery, KEYWORD_FIELDS).toBytes());
+    }
+
+    @Test
+    public void writesFacetAggregations() throws Exception {
+        final MovieQuery movieQuery = new MovieQuery();
+        movieQuery.setLanguage("English");
+
+        assertJson("{'query':{'bool':{'must':[],'filter':[{'term':{'language':'English'}}]}},'size':0,'aggs':{"
+                        + "'genre':{'terms':{'field':'genre.raw','size':10}},"
+                        + "'decade':{'histogram':{'field':'year','interval':10,'min_doc_count':1}},"
+                        + "'starRating':{'range':{'field':'starRating','ranges':[{'to':2.5},{'from':2.5,'to':4.0},{'from':4.0}]}}"
+                        + "}}",
+                SearchBodyWriter.match(movieQuery, KEYWORD_FIELDS).size(0)
+                        .aggregations(EnumSet.of(Facet.GENRE, Facet.DECADE, Facet.STAR_RATING), 10, Arrays.asList(2.5, 4.0))
+                        .toBytes());
+    }
+
+    @Test
+    public void writesFuzzyQuery() throws Exception {
+        final MovieQuery movieQuery = new MovieQuery();
+        movieQuery.setStoryline("wakand");
+
+        assertJson("{'query':{'fuzzy':{'storyline':"
+                        + "{'value':'wakand','boost':1.0,'fuzziness':50,'prefix_length':0,'max_expansions':100}}},"
+                        + "'from':10,'size':5}",
+                SearchBodyWriter.fuzzy(movieQuery).from(10).size(5).toBytes());
+    }
+
+    @Test
+    public void writesPageOfResults() throws Exception {
+        assertJson("{'query':{'bool':{'must':[]}},'size':20,"
+                        + "'sort':[{'_score':'desc'},{'id':'asc'}],"
+                        + "'search_after':[1.5,42],"
+                        + "'pit':{'id':'abc','keep_alive':'1m'}}",
+                SearchBodyWriter.match(new MovieQuery(), KEYWORD_FIELDS).size(20).sortByScoreThenId()
+                        .searchAfter(Arrays.asList(1.5, 42)).pointInTime("abc", "1m").toBytes());
+    }
+
+    @Test
+    public void startsOverAfterUnfinishedBody() throws Exception {
+        SearchBodyWriter.match(new MovieQuery(), KEYWORD_FIELDS).size(1);
+
+        assertJson("{'query':{'bool':{'must':[]}}}", SearchBodyWriter.match(new MovieQuery(), KEYWORD_FIELDS).toBytes());
+    }
+
+    @Test
+    public void encodesTextAsUtf8() throws Exception {
+        final MovieQuery movieQuery = new MovieQuery();
+        movieQuery.setTitle("Amélie");
+
+        final byte[] body = SearchBodyWriter.match(movieQuery, KEYWORD_FIELDS).toBytes();
+
+        assertEquals("{\"query\":{\"bool\":{\"must\":[{\"match\":{\"title\":\"Amélie\"}}]}}}",
+                new String(body, StandardCharsets.UTF_8));
+    }
+
+    private static void assertJson(final String expected, final byte[] actual) throws Exception {
+        final JsonNode expectedTree = OBJECT_MAPPER.readTree(expected.replace('\'', '"'));
+        assertEquals(expectedTree, OBJECT_MAPPER.readTree(actual));
+    }
+}
@@ -0,0 +1,122 @@
+package com.labs1904.aws.elasticsearch.springboot.services;
+
+import com.labs1904.aws.elasticsearch.springboot.config.ConfigurationInfo;
+import com.labs1904.aws.elasticsearch.springboot.models.MovieQuery;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SearchResultCacheTest {
+
+    private static final String INDEX = "movies";
+    private static final byte[] RESULT = new byte[1000];
+
+    private ConfigurationInfo configurationInfo;
+
+    @Before
+    public void setUp() {
+        configurationInfo = new ConfigurationInfo();
+        configurationInfo.getCache().setRefreshGraceMillis(0);
+    }
+
+    @Test
+    public void expiresResultsAfterTheTtl() throws Exception {
+        configurationInfo.getCache().setTtlMillis(50);
+        final SearchResultCache cache = cache();
+        final SearchResultCache.Key key = key(cache, "Alien");
+
+        cache.put(key, RESULT, System.nanoTime());
+        assertArrayEquals(RESULT, cache.get(key));
+
+        Thread.sleep(100);
+        assertNull(cache.get(key));
+    }
+
+    @Test
+    public void keepsTheCachedResultsUnderTheMaximumSize() throws Exception {
+        configurationInfo.getCache().setMaxBytes(10_000);
+        final SearchResultCache cache = cache();
+        final List<SearchResultCache.Key> keys = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            final SearchResultCache.Key key = key(cache, "Movie " + i);
+            keys.add(key);
+            cache.put(key, RESULT, System.nanoTime());
+        }
+
+        // Caffeine evicts in the background, shortly after the writes
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (cached(cache, keys) * RESULT.length > 10_000 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(cached(cache, keys) * RESULT.length <= 10_000);
+    }
+
+    @Test
+    public void skipsResultsLargerThanAnEntryMayBe() {
+        configurationInfo.getCache().setMaxEntryBytes(RESULT.length - 1);
+        final SearchResultCache cache = cache();
+        final SearchResultCache.Key key = key(cache, "Alien");
+
+        cache.put(key, RESULT, System.nanoTime());
+        assertNull(cache.get(key));
+    }
+
+    @Test
+    public void dropsResultsOfAnIndexOnWriteAndSkipsSearchesWithinTheGracePeriod() {
+        configurationInfo.getCache().setRefreshGraceMillis(60_000);
+        final SearchResultCache cache = cache();
+        final SearchResultCache.Key key = key(cache, "Alien");
+        final long started = System.nanoTime();
+        cache.put(key, RESULT, started);
+
+        cache.invalidate(INDEX);
+        assertNull(cache.get(key));
+
+        // The write may not be visible yet to a search that started around it
+        cache.put(key, RESULT, System.nanoTime());
+        assertNull(cache.get(key));
+    }
+
+    @Test
+    public void sharesEntriesBetweenEquivalentSearches() {
+        final SearchResultCache cache = cache();
+        final MovieQuery first = new MovieQuery();
+        first.setTitle(" Alien ");
+        first.setGenre(new LinkedHashSet<>(Arrays.asList("Sci-Fi", "Horror")));
+        final MovieQuery second = new MovieQuery();
+        second.setTitle("Alien");
+        second.setGenre(new LinkedHashSet<>(Arrays.asList("Horror", "Sci-Fi")));
+
+        assertEquals(cache.key(SearchResultCache.SearchType.MATCH, INDEX, 0, 10, null, first),
+                cache.key(SearchResultCache.SearchType.MATCH, INDEX, 0, 10, null, second));
+    }
+
+    private SearchResultCache cache() {
+        return new SearchResultCache(configurationInfo, new SimpleMeterRegistry());
+    }
+
+    private static SearchResultCache.Key key(final SearchResultCache cache, final String title) {
+        final MovieQuery movieQuery = new MovieQuery();
+        movieQuery.setTitle(title);
+        return cache.key(SearchResultCache.SearchType.MATCH, INDEX, 0, 10, null, movieQuery);
+    }
+
+    private static int cached(final SearchResultCache cache, final List<SearchResultCache.Key> keys) {
+        int cached = 0;
+        for (SearchResultCache.Key key : keys) {
+            cached += cache.get(key) != null ? 1 : 0;
+        }
+        return cached;
+    }
+}
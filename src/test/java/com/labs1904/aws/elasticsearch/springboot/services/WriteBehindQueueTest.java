@@ -0,0 +1,159 @@
+package com.labs1904.aws.elasticsearch.springboot.services;
+
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.Request;
+import com.amazonaws.http.HttpMethodName;
+import com.amazonaws.http.HttpResponse;
+import com.amazonaws.util.IOUtils;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.labs1904.aws.elasticsearch.springboot.config.ConfigurationInfo;
+import com.labs1904.aws.elasticsearch.springboot.handlers.AwsResponse;
+import com.labs1904.aws.elasticsearch.springboot.models.BulkOperation;
+import com.labs1904.aws.elasticsearch.springboot.models.Movie;
+import com.labs1904.aws.elasticsearch.springboot.models.WriteStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class WriteBehindQueueTest {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final String REJECTED = "Rejected";
+
+    private final ConfigurationInfo configurationInfo = new ConfigurationInfo();
+    // The title of every document, as the stand-in applied the writes
+    private final Map<String, String> titles = new ConcurrentHashMap<>();
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private ExecutorService bulkExecutor;
+    private WriteBehindQueue writeBehindQueue;
+
+    @Before
+    public void setUp() {
+        configurationInfo.getWriteBehind().setEnabled(true);
+        configurationInfo.getWriteBehind().setBatchSize(3);
+        configurationInfo.getWriteBehind().setFlushIntervalMillis(1000);
+        // Every write is a chunk of its own, and the chunks could be sent at the same time
+        configurationInfo.getBulk().setMaxDocuments(1);
+        configurationInfo.getBulk().setConcurrency(4);
+        bulkExecutor = Executors.newFixedThreadPool(4);
+
+        // Sends nothing: every request is answered by bulkResponse
+        final ElasticSearchService elasticSearchService = new ElasticSearchService() {
+            @Override
+            Request generateSignedRequest(final String url, final byte[] body, final String contentType,
+                                          final Map<String, List<String>> parameters,
+                                          final HttpMethodName httpMethodName) {
+                final Request<?> request = new DefaultRequest<>("es");
+                request.setContent(new ByteArrayInputStream(body));
+                return request;
+            }
+
+            @Override
+            AwsResponse executeRequest(final Request request) {
+                return bulkResponse(request);
+            }
+        };
+        ReflectionTestUtils.setField(elasticSearchService, "configurationInfo", configurationInfo);
+        ReflectionTestUtils.setField(elasticSearchService, "searchResultCache",
+                new SearchResultCache(configurationInfo, new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(elasticSearchService, "bulkExecutor", bulkExecutor);
+
+        writeBehindQueue = new WriteBehindQueue(configurationInfo, elasticSearchService, new SimpleMeterRegistry());
+        writeBehindQueue.start();
+    }
+
+    @After
+    public void tearDown() {
+        bulkExecutor.shutdownNow();
+    }
+
+    @Test
+    public void appliesWritesOfTheSameDocumentInOrderAcrossChunks() throws Exception {
+        writeBehindQueue.submit(BulkOperation.index(movie(1, "Old")));
+        writeBehindQueue.submit(BulkOperation.index(movie(1, "New")));
+        writeBehindQueue.submit(BulkOperation.index(movie(2, "Other")));
+        writeBehindQueue.stop();
+
+        assertEquals(3, requests.get());
+        assertEquals("New", titles.get("1"));
+        assertEquals(WriteStatus.State.INDEXED, writeBehindQueue.getStatus("1").getState());
+    }
+
+    @Test
+    public void reportsTheResultOfTheLatestWrite() throws Exception {
+        writeBehindQueue.submit(BulkOperation.index(movie(1, REJECTED)));
+        writeBehindQueue.submit(BulkOperation.index(movie(1, "New")));
+        writeBehindQueue.submit(BulkOperation.index(movie(2, REJECTED)));
+        writeBehindQueue.stop();
+
+        assertEquals(WriteStatus.State.INDEXED, writeBehindQueue.getStatus("1").getState());
+        final WriteStatus failed = writeBehindQueue.getStatus("2");
+        assertEquals(WriteStatus.State.FAILED, failed.getState());
+        assertEquals("mapper_parsing_exception: failed to parse [title]", failed.getError());
+    }
+
+    private static Movie movie(final long id, final String title) {
+        final Movie movie = new Movie();
+        movie.setId(id);
+        movie.setTitle(title);
+        return movie;
+    }
+
+    /**
+     * Apply the writes of a bulk request and answer it the way ElasticSearch does. The first request is slow, so that
+     * a chunk sent at the same time as it would be applied before it.
+     */
+    private AwsResponse bulkResponse(final Request<?> request) {
+        try {
+            if (requests.incrementAndGet() == 1) {
+                Thread.sleep(200);
+            }
+            final String[] lines = IOUtils.toString(request.getContent()).split("\n");
+            final ObjectNode response = OBJECT_MAPPER.createObjectNode();
+            final ArrayNode items = response.putArray("items");
+            for (int i = 0; i < lines.length; i += 2) {
+                final String id = OBJECT_MAPPER.readTree(lines[i]).path("index").path("_id").asText();
+                final JsonNode source = OBJECT_MAPPER.readTree(lines[i + 1]);
+                final ObjectNode item = items.addObject().putObject("index");
+                item.put("_id", id);
+                if (REJECTED.equals(source.path("title").asText())) {
+                    item.put("status", 400);
+                    item.putObject("error").put("type", "mapper_parsing_exception")
+                            .put("reason", "failed to parse [title]");
+                } else {
+                    titles.put(id, source.path("title").asText());
+                    item.put("status", 201);
+                }
+            }
+
+            final HttpResponse httpResponse = new HttpResponse(request, null);
+            httpResponse.setStatusCode(200);
+            httpResponse.setContent(new ByteArrayInputStream(response.toString().getBytes(StandardCharsets.UTF_8)));
+            return new AwsResponse(httpResponse);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+}